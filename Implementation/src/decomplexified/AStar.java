@@ -0,0 +1,134 @@
+package decomplexified;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import decomplexified.util.GraphNode2;
+import decomplexified.util.RandomGraphs;
+import decomplexified.util.WeightedValue;
+
+/**
+ * @author Alan
+ *  A* search: Dijkstra's algorithm where the frontier is ordered by the
+ *  distance so far plus a caller-supplied estimate of the distance left.
+ *  With an estimate of 0 it is exactly Dijkstra.traverse.
+ */
+public class AStar<T> {
+    /**
+     * Estimated distance from a node to the sink. It must be admissible,
+     * i.e. never larger than the true distance, or the result may not be
+     * the shortest.
+     */
+    public static interface Heuristic<T> {
+        public double estimate(GraphNode2<T> node, GraphNode2<T> sink);
+    }
+
+    // frontier ordered by distance so far + estimated distance left
+    private MinPriorityQueue<GraphNode2<T>, Double> frontLine;
+
+    // distance so far of every node that entered the frontier
+    private HashMap<GraphNode2<T>, Double> distances = new HashMap<>();
+
+    private Heuristic<T> heuristic;
+
+    // work done by the last traverse call
+    private int nodesSettled = 0;
+    private int edgesRelaxed = 0;
+
+    public AStar(Heuristic<T> h) { this(h, new BinaryPriorityQueue<GraphNode2<T>, Double>()); }
+    public AStar(Heuristic<T> h, MinPriorityQueue<GraphNode2<T>, Double> q) {
+        heuristic = h;
+        frontLine = q;
+    }
+
+    public int getNodesSettled() { return nodesSettled; }
+    public int getEdgesRelaxed() { return edgesRelaxed; }
+
+    public Double traverse(GraphNode2<T> source, GraphNode2<T> sink) {
+        nodesSettled = 0;
+        edgesRelaxed = 0;
+
+        // if the graph is empty do nothing
+        if (source == null) { return null; }
+        if (sink == source) { return 0.0; }
+
+        // initialization
+        frontLine.clear();
+        distances.clear();
+
+        // visit the root
+        distances.put(source, 0.0);
+        frontLine.push(source, heuristic.estimate(source, sink));
+
+        while (!frontLine.isEmpty()) {
+            // take out the node with smallest estimated total distance
+            GraphNode2<T> parent = frontLine.pop().value;
+            double parentDist = distances.get(parent);
+            if (parent == sink) { return parentDist; }
+            ++nodesSettled;
+
+            // add children to the priority queue
+            for (WeightedValue<GraphNode2<T>,Double> edge : parent.edges) {
+                GraphNode2<T> child = edge.value;
+                ++edgesRelaxed;
+                Double oldDist = distances.get(child);
+                double newDist = parentDist + edge.weight;
+                if (oldDist == null || newDist < oldDist) {
+                    // unlike Dijkstra, a node already taken out is pushed
+                    // again if a shorter way to it shows up, which can
+                    // happen with an admissible but inconsistent heuristic
+                    distances.put(child, newDist);
+                    frontLine.push(child, newDist + heuristic.estimate(child, sink));
+                }
+            } // for
+        } // while
+        return null;
+    }
+
+/////////////////////////////////////////////////////////////////////
+
+    /**
+     * Compare A* with Euclidean distance against a zero estimate (plain
+     * Dijkstra) on a grid whose weights are at least 1 per unit of length;
+     * pass the grid side as first argument.
+     */
+    public static void main(String[] args) {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        Double[][][] edgeLists = RandomGraphs.grid(side, side, 10, new Random(42));
+        double[][] coordinates = new double[side * side][];
+        for (int id = 0; id < coordinates.length; ++id) {
+            coordinates[id] = new double[] {id / side, id % side};
+        }
+        ArrayList<GraphNode2<double[]>> nodes = GraphNode2.buildGraph(coordinates, edgeLists);
+
+        AStar<double[]> euclidean = new AStar<>(new Heuristic<double[]>() {
+            public double estimate(GraphNode2<double[]> node, GraphNode2<double[]> sink) {
+                return Math.hypot(node.value[0] - sink.value[0], node.value[1] - sink.value[1]);
+            }
+        });
+        AStar<double[]> zero = new AStar<>(new Heuristic<double[]>() {
+            public double estimate(GraphNode2<double[]> node, GraphNode2<double[]> sink) {
+                return 0;
+            }
+        });
+        Dijkstra<double[]> dijkstra = new Dijkstra<>();
+
+        Random random = new Random(7);
+        for (int query = 0; query < 5; ++query) {
+            GraphNode2<double[]> s = nodes.get(random.nextInt(nodes.size()));
+            GraphNode2<double[]> t = nodes.get(random.nextInt(nodes.size()));
+            Double expected = dijkstra.traverse(s, t);
+            Double d1 = euclidean.traverse(s, t);
+            Double d0 = zero.traverse(s, t);
+            System.out.println(Arrays.toString(s.value) + " to " + Arrays.toString(t.value)
+                    + ": distance " + d1
+                    + (d1.equals(expected) && d0.equals(expected) ? "" : " MISMATCH")
+                    + "; A* settled " + euclidean.getNodesSettled()
+                    + " nodes, relaxed " + euclidean.getEdgesRelaxed() + " edges"
+                    + "; Dijkstra settled " + zero.getNodesSettled()
+                    + " nodes, relaxed " + zero.getEdgesRelaxed() + " edges");
+        }
+    }
+}
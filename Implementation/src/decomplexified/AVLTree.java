@@ -0,0 +1,389 @@
+package decomplexified;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import decomplexified.util.TreeNode2;
+
+/**
+ * @author Alan
+ *  AVL tree: a BST that keeps, at every node, the heights of the two
+ *  subtrees within one of each other. After an insert or delete the nodes
+ *  on the way back up are checked, and one or two rotations fix any node
+ *  that is off by two. The height stays below 1.45 log2(n), so find,
+ *  insert and delete are O(log n) whatever the insertion order; BST
+ *  degrades to a linked list on sorted input.
+ *
+ *  It is a set: a value equal to one already present is not inserted.
+ *  Nodes hold no parent pointer, only the value, the children, the
+ *  height, and the size of their subtree. The sizes are kept up to date
+ *  on the same way back up, and give order statistics in O(log n): the
+ *  rank of a value, the value of a given rank (select), and the number
+ *  of values in a range, without visiting the values.
+ */
+public class AVLTree<T extends Comparable<T>> {
+    private static class Node<T> {
+        T value;
+        Node<T> left;
+        Node<T> right;
+        int height = 1;
+        // number of nodes in this subtree
+        int size = 1;
+
+        Node(T value) { this.value = value; }
+    }
+
+    private Node<T> root = null;
+    // set by insert and delete when the tree changed
+    private boolean changed;
+
+    // trivial methods
+    public int size() { return size(root); }
+    public boolean isEmpty() { return root == null; }
+    public void clear() { root = null; }
+    // height of the tree; 0 if empty
+    public int height() { return height(root); }
+
+    /* find a value. Return the value stored in the tree that equals
+     * the query, null if not found.
+     */
+    public T find(T query) {
+        Node<T> node = root;
+        while (node != null) {
+            int compared = query.compareTo(node.value);
+            if (compared == 0) {
+                return node.value;
+            }
+            node = compared < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    public boolean contains(T query) { return find(query) != null; }
+
+    /* insert a value. Return false if it was present already */
+    public boolean insert(T value) {
+        changed = false;
+        root = insert(root, value);
+        return changed;
+    }
+
+    /* delete a value. Return false if it was not found */
+    public boolean delete(T value) {
+        changed = false;
+        root = delete(root, value);
+        return changed;
+    }
+
+    // helper: insert into the subtree and return its new root
+    private Node<T> insert(Node<T> node, T value) {
+        if (node == null) {
+            changed = true;
+            return new Node<>(value);
+        }
+        int compared = value.compareTo(node.value);
+        if (compared < 0) {
+            node.left = insert(node.left, value);
+        } else if (compared > 0) {
+            node.right = insert(node.right, value);
+        } else {
+            return node;
+        }
+        return changed ? rebalance(node) : node;
+    }
+
+    // helper: delete from the subtree and return its new root
+    private Node<T> delete(Node<T> node, T value) {
+        if (node == null) { return null; }
+        int compared = value.compareTo(node.value);
+        if (compared < 0) {
+            node.left = delete(node.left, value);
+        } else if (compared > 0) {
+            node.right = delete(node.right, value);
+        } else {
+            changed = true;
+            if (node.left == null) { return node.right; }
+            if (node.right == null) { return node.left; }
+            // two children: take over the successor's value and delete
+            // the successor from the right subtree instead
+            Node<T> successor = node.right;
+            while (successor.left != null) { successor = successor.left; }
+            node.value = successor.value;
+            node.right = delete(node.right, successor.value);
+        }
+        return changed ? rebalance(node) : node;
+    }
+
+    // helper: restore the balance of node, whose subtrees are balanced
+    // and differ in height by at most two; return the subtree's new root
+    private Node<T> rebalance(Node<T> node) {
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                // left-right case
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                // right-left case
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        update(node);
+        return node;
+    }
+
+    /*
+            node             left
+           /    \           /    \
+         left    c   -->   a     node
+        /    \                  /    \
+       a      b                b      c
+     */
+    private Node<T> rotateRight(Node<T> node) {
+        Node<T> left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    // mirror image of rotateRight
+    private Node<T> rotateLeft(Node<T> node) {
+        Node<T> right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    private void update(Node<T> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /* number of values smaller than value; value need not be present */
+    public int rank(T value) {
+        int rank = 0;
+        Node<T> node = root;
+        while (node != null) {
+            int compared = value.compareTo(node.value);
+            if (compared <= 0) {
+                node = node.left;
+            } else {
+                // node and its left subtree are smaller
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    /* the value of rank k, i.e. the (k+1)-th smallest */
+    public T select(int k) {
+        if (k < 0 || k >= size()) {
+            throw new IndexOutOfBoundsException("rank " + k + ", size " + size());
+        }
+        Node<T> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (k < leftSize) {
+                node = node.left;
+            } else if (k == leftSize) {
+                return node.value;
+            } else {
+                k -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /* number of values in [lo, hi) */
+    public int countRange(T lo, T hi) {
+        return Math.max(rank(hi) - rank(lo), 0);
+    }
+
+    /**
+     * Values in [lo, hi) in increasing order, found lazily: the iterator
+     * keeps the path of nodes still to be visited, so a range of k values
+     * costs O(log n + k), and the subtrees outside the range are never
+     * entered. The tree must not be modified while it is in use.
+     */
+    public Iterator<T> rangeIterator(final T lo, final T hi) {
+        return new Iterator<T>() {
+            // nodes >= lo whose value and right subtree are not done yet
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            private Node<T>[] stack = (Node<T>[]) new Node[Math.max(height(root), 1)];
+            private int top = 0;
+            {
+                pushLeft(root);
+            }
+
+            public boolean hasNext() {
+                return top > 0 && stack[top - 1].value.compareTo(hi) < 0;
+            }
+
+            public T next() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+                Node<T> node = stack[--top];
+                pushLeft(node.right);
+                return node.value;
+            }
+
+            // helper: push the path to the smallest value >= lo below node
+            private void pushLeft(Node<T> node) {
+                while (node != null) {
+                    if (node.value.compareTo(lo) < 0) {
+                        node = node.right;
+                    } else {
+                        if (top == stack.length) { stack = Arrays.copyOf(stack, 2 * top); }
+                        stack[top++] = node;
+                        node = node.left;
+                    }
+                }
+            }
+        };
+    }
+
+///////////////////////////////////////////////////////////////
+
+    /**
+     * Build trees of n values inserted in sorted, reverse-sorted and
+     * random order, then look every value up, with BST and AVLTree; pass
+     * n as first argument. BST goes quadratic on sorted input, so keep n
+     * moderate.
+     */
+    private static void benchmark(int n) {
+        Integer[] sorted = new Integer[n];
+        for (int i = 0; i < n; ++i) { sorted[i] = i; }
+        Integer[] reversed = new Integer[n];
+        for (int i = 0; i < n; ++i) { reversed[i] = n - 1 - i; }
+        Integer[] shuffled = sorted.clone();
+        Random random = new Random(42);
+        for (int i = n - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            Integer t = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = t;
+        }
+        Integer[][] inputs = {sorted, reversed, shuffled};
+        String[] names = {"sorted", "reverse-sorted", "random"};
+
+        for (int round = 0; round < 2; ++round) {
+            for (int k = 0; k < inputs.length; ++k) {
+                Integer[] input = inputs[k];
+
+                BST<Integer> bst = new BST<>();
+                long start = System.nanoTime();
+                TreeNode2<Integer> bstRoot = null;
+                for (Integer value : input) { bstRoot = bst.insert(bstRoot, value); }
+                long bstInsert = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (Integer value : shuffled) { bst.find(bstRoot, value); }
+                long bstFind = System.nanoTime() - start;
+
+                AVLTree<Integer> avl = new AVLTree<>();
+                start = System.nanoTime();
+                for (Integer value : input) { avl.insert(value); }
+                long avlInsert = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (Integer value : shuffled) { avl.find(value); }
+                long avlFind = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (Integer value : shuffled) { avl.delete(value); }
+                long avlDelete = System.nanoTime() - start;
+
+                System.out.println(names[k] + ", " + n + " values: BST insert "
+                        + bstInsert / 1000000 + "ms, find " + bstFind / 1000000
+                        + "ms; AVL insert " + avlInsert / 1000000 + "ms, find "
+                        + avlFind / 1000000 + "ms, delete " + avlDelete / 1000000 + "ms");
+            }
+        }
+    }
+
+    /**
+     * Order statistics on n random values, against copying the values out
+     * in order first, as one would without subtree sizes.
+     */
+    private static void benchmarkOrderStatistics(int n) {
+        Random random = new Random(42);
+        AVLTree<Integer> avl = new AVLTree<>();
+        while (avl.size() < n) { avl.insert(random.nextInt()); }
+        int queries = 1000;
+        int[] ks = new int[queries];
+        int[] los = new int[queries];
+        for (int i = 0; i < queries; ++i) {
+            ks[i] = random.nextInt(n);
+            los[i] = random.nextInt();
+        }
+
+        for (int round = 0; round < 2; ++round) {
+            long sum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < queries; ++i) {
+                ArrayList<Integer> sorted = new ArrayList<>(n);
+                Iterator<Integer> all = avl.rangeIterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
+                while (all.hasNext()) { sorted.add(all.next()); }
+                sum += sorted.get(ks[i]);
+                int lo = los[i];
+                int count = 0;
+                for (int value : sorted) {
+                    if (value >= lo && value < lo + (1 << 24)) { ++count; }
+                }
+                sum += count;
+            }
+            long copyTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < queries; ++i) {
+                sum -= avl.select(ks[i]);
+                int lo = los[i];
+                sum -= avl.countRange(lo, lo + (1 << 24));
+            }
+            long treeTime = System.nanoTime() - start;
+            System.out.println(n + " values, " + queries + " select + countRange: copy out "
+                    + copyTime / 1000000 + "ms, subtree sizes " + treeTime / 1000 + "us"
+                    + (sum == 0 ? "" : " MISMATCH"));
+        }
+    }
+
+    public static void main(String[] args) {
+        AVLTree<Integer> avl = new AVLTree<>();
+        for (int value = 1; value <= 15; ++value) { avl.insert(value); }
+        System.out.println("After inserting 1 .. 15 in order: size " + avl.size()
+                + ", height " + avl.height());
+        System.out.println("insert 7 again --> " + avl.insert(7));
+        System.out.println("find 7 --> " + avl.find(7) + ", find 16 --> " + avl.find(16));
+        for (int value = 1; value <= 10; ++value) { avl.delete(value); }
+        System.out.println("After deleting 1 .. 10: size " + avl.size()
+                + ", height " + avl.height());
+        System.out.println("delete 3 again --> " + avl.delete(3));
+        System.out.println("rank of 13 --> " + avl.rank(13) + ", select(2) --> " + avl.select(2)
+                + ", countRange(12, 15) --> " + avl.countRange(12, 15));
+        System.out.print("[12, 15) -->");
+        Iterator<Integer> range = avl.rangeIterator(12, 15);
+        while (range.hasNext()) { System.out.print(" " + range.next()); }
+        System.out.println();
+        System.out.println();
+
+        benchmark(args.length > 0 ? Integer.parseInt(args[0]) : 20000);
+        System.out.println();
+        benchmarkOrderStatistics(100000);
+    }
+}
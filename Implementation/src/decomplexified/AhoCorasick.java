@@ -0,0 +1,447 @@
+package decomplexified;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * @author Alan
+ *  Aho-Corasick: find all occurrences of many patterns in one pass over
+ *  a text, in O(text length + number of matches), whatever the number of
+ *  patterns.
+ *
+ *  The patterns are put in a trie; a state is a node of it, i.e. a
+ *  prefix of some pattern. While reading the text, the state is the
+ *  longest such prefix that ends at the current character. When the next
+ *  character cannot extend it, the state falls back along its failure
+ *  link: the longest proper suffix of the state that is also a prefix of
+ *  some pattern. That is LongestEquifix generalized from one pattern to
+ *  a trie, and the failure links are computed by the same loop, "recurse
+ *  on equifix of the equifix"; KMP uses them to skip ahead in the same
+ *  way. With one pattern the trie is a path and the failure link of the
+ *  prefix of length i+1 has length getEquifixLength(pattern)[i].
+ *
+ *  A state ending a pattern may also end shorter patterns, which are
+ *  found by following output links: the nearest state on the failure
+ *  chain that ends a pattern.
+ *
+ *  The automaton is stored in arrays, with the states numbered
+ *  breadth-first so that the children of a state are consecutive and
+ *  sorted by character; a transition is a binary search among them (the
+ *  root, visited most, has a direct table). save writes the arrays to a
+ *  file and load reads them back without rebuilding.
+ */
+public class AhoCorasick {
+    // receives the matches found by search
+    public interface MatchListener {
+        // pattern (its index) occurs at text[start .. start+length)
+        void match(int pattern, int start);
+    }
+
+    private static final int MAGIC = 0x41484f43; // "AHOC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private final int stateCount;
+    private final int patternCount;
+    // children of state s are the states firstChild[s] .. firstChild[s+1]-1,
+    // label[c] is the character leading to c, sorted among siblings
+    private final int[] firstChild;
+    private final char[] label;
+    private final int[] fail;
+    // nearest state on the failure chain that ends a pattern; -1 if none
+    private final int[] outputLink;
+    // first pattern ending at a state, -1 if none; more equal patterns
+    // follow through samePattern
+    private final int[] patternAt;
+    private final int[] samePattern;
+    private final int[] patternLength;
+    // transitions from the root by character, -1 if none
+    private final int[] rootNext;
+
+    private AhoCorasick(int[] firstChild, char[] label, int[] fail, int[] outputLink,
+            int[] patternAt, int[] samePattern, int[] patternLength) {
+        this.stateCount = label.length;
+        this.patternCount = patternLength.length;
+        this.firstChild = firstChild;
+        this.label = label;
+        this.fail = fail;
+        this.outputLink = outputLink;
+        this.patternAt = patternAt;
+        this.samePattern = samePattern;
+        this.patternLength = patternLength;
+        rootNext = new int[Character.MAX_VALUE + 1];
+        Arrays.fill(rootNext, -1);
+        for (int c = firstChild[0]; c < firstChild[1]; ++c) {
+            rootNext[label[c]] = c;
+        }
+    }
+
+    public int stateCount() { return stateCount; }
+    public int patternCount() { return patternCount; }
+
+    /**
+     * Build the automaton of non-empty patterns; a match reports the
+     * index of its pattern in this array.
+     */
+    public static AhoCorasick build(final String[] patterns) {
+        int p = patterns.length;
+        int maxStates = 1;
+        int[] patternLength = new int[p];
+        for (int k = 0; k < p; ++k) {
+            if (patterns[k].isEmpty()) {
+                throw new IllegalArgumentException("empty pattern: " + k);
+            }
+            patternLength[k] = patterns[k].length();
+            maxStates += patternLength[k];
+        }
+
+        // in sorted order, the patterns starting with the prefix of a state
+        // form a range, and the ranges of its children split it by the
+        // next character, in order
+        Integer[] sorted = new Integer[p];
+        for (int k = 0; k < p; ++k) { sorted[k] = k; }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return patterns[a].compareTo(patterns[b]);
+            }
+        });
+
+        // the trie, breadth-first: state s covers sorted[lo[s] .. hi[s]),
+        // whose first depth[s] characters are its prefix
+        int[] lo = new int[maxStates];
+        int[] hi = new int[maxStates];
+        int[] depth = new int[maxStates];
+        int[] parent = new int[maxStates];
+        char[] label = new char[maxStates];
+        int[] firstChild = new int[maxStates + 1];
+        int[] patternAt = new int[maxStates];
+        int[] samePattern = new int[p];
+        Arrays.fill(patternAt, -1);
+        hi[0] = p;
+        int count = 1;
+        for (int s = 0; s < count; ++s) {
+            int d = depth[s];
+            int k = lo[s];
+            // patterns equal to the prefix sort first
+            int last = -1;
+            for (; k < hi[s] && patterns[sorted[k]].length() == d; ++k) {
+                if (last < 0) { patternAt[s] = sorted[k]; } else { samePattern[last] = sorted[k]; }
+                last = sorted[k];
+            }
+            if (last >= 0) { samePattern[last] = -1; }
+
+            firstChild[s] = count;
+            while (k < hi[s]) {
+                char c = patterns[sorted[k]].charAt(d);
+                int child = count++;
+                label[child] = c;
+                parent[child] = s;
+                depth[child] = d + 1;
+                lo[child] = k;
+                while (k < hi[s] && patterns[sorted[k]].charAt(d) == c) { ++k; }
+                hi[child] = k;
+            }
+        }
+        firstChild[count] = count;
+
+        label = Arrays.copyOf(label, count);
+        firstChild = Arrays.copyOf(firstChild, count + 1);
+        patternAt = Arrays.copyOf(patternAt, count);
+        int[] fail = new int[count];
+        int[] outputLink = new int[count];
+        AhoCorasick automaton = new AhoCorasick(firstChild, label, fail, outputLink,
+                patternAt, samePattern, patternLength);
+
+        // failure links, parents before children; as in LongestEquifix,
+        // start from the failure link of the parent and fall back further
+        // until the character extends it
+        outputLink[0] = -1;
+        for (int s = 1; s < count; ++s) {
+            if (parent[s] == 0) {
+                fail[s] = 0;
+            } else {
+                int nk = fail[parent[s]];
+                while (true) {
+                    // found
+                    int next = automaton.child(nk, label[s]);
+                    if (next >= 0) {
+                        fail[s] = next;
+                        break;
+                    }
+                    // not found, and nothing shorter to try
+                    if (nk == 0) {
+                        fail[s] = 0;
+                        break;
+                    }
+                    // recurse on the failure link of the failure link
+                    nk = fail[nk];
+                }
+            }
+            int f = fail[s];
+            outputLink[s] = patternAt[f] >= 0 ? f : outputLink[f];
+        }
+        return automaton;
+    }
+
+    // helper: the child of state by character c, -1 if none
+    private int child(int state, char c) {
+        if (state == 0) { return rootNext[c]; }
+        int low = firstChild[state];
+        int high = firstChild[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (label[mid] < c) {
+                low = mid + 1;
+            } else if (label[mid] > c) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Scan text once, passing every occurrence of every pattern to
+     * listener, by increasing end position (and longest first among those
+     * ending at the same position).
+     */
+    public void search(CharSequence text, MatchListener listener) {
+        int state = 0;
+        int n = text.length();
+        for (int i = 0; i < n; ++i) {
+            char c = text.charAt(i);
+            while (true) {
+                int next = child(state, c);
+                if (next >= 0) {
+                    state = next;
+                    break;
+                }
+                if (state == 0) { break; }
+                state = fail[state];
+            }
+            for (int s = patternAt[state] >= 0 ? state : outputLink[state]; s > 0; s = outputLink[s]) {
+                for (int k = patternAt[s]; k >= 0; k = samePattern[k]) {
+                    listener.match(k, i - patternLength[k] + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * All occurrences in text, as {pattern, start} pairs one after the
+     * other, in the order of search.
+     */
+    public int[] findAll(CharSequence text) {
+        final int[][] result = {new int[16]};
+        final int[] size = {0};
+        search(text, new MatchListener() {
+            public void match(int pattern, int start) {
+                if (size[0] + 2 > result[0].length) {
+                    result[0] = Arrays.copyOf(result[0], 2 * result[0].length);
+                }
+                result[0][size[0]++] = pattern;
+                result[0][size[0]++] = start;
+            }
+        });
+        return Arrays.copyOf(result[0], size[0]);
+    }
+
+    /**
+     * Write the automaton. Layout, little-endian:
+     *   header      int magic "AHOC", int version, int stateCount,
+     *               int patternCount
+     *   firstChild  stateCount+1 ints
+     *   fail, outputLink, patternAt  stateCount ints each
+     *   samePattern, patternLength   patternCount ints each
+     *   label       stateCount chars
+     */
+    public void save(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(stateCount).putInt(patternCount);
+            int[][] sections = {firstChild, fail, outputLink, patternAt, samePattern, patternLength};
+            for (int[] section : sections) {
+                for (int x : section) {
+                    if (buffer.remaining() < 4) { flush(channel, buffer); }
+                    buffer.putInt(x);
+                }
+            }
+            for (char c : label) {
+                if (buffer.remaining() < 2) { flush(channel, buffer); }
+                buffer.putChar(c);
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    // read an automaton written by save
+    public static AhoCorasick load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw new IOException("not an Aho-Corasick file: " + file);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+                                       .order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("not an Aho-Corasick file: " + file);
+            }
+            int n = buffer.getInt();
+            int p = buffer.getInt();
+            if (n < 1 || p < 0) {
+                throw new IOException("corrupt Aho-Corasick header: " + file);
+            }
+            if (HEADER_BYTES + 4L * (4L * n + 1 + 2L * p) + 2L * n > size) {
+                throw new IOException("truncated Aho-Corasick file: " + file);
+            }
+            int[] firstChild = getInts(buffer, n + 1);
+            int[] fail = getInts(buffer, n);
+            int[] outputLink = getInts(buffer, n);
+            int[] patternAt = getInts(buffer, n);
+            int[] samePattern = getInts(buffer, p);
+            int[] patternLength = getInts(buffer, p);
+            char[] label = new char[n];
+            buffer.asCharBuffer().get(label);
+            return new AhoCorasick(firstChild, label, fail, outputLink,
+                    patternAt, samePattern, patternLength);
+        }
+    }
+
+    // helper: the next count ints of buffer, in bulk
+    private static int[] getInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * count);
+        return values;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) { channel.write(buffer); }
+        buffer.clear();
+    }
+
+/////////////////////////////////////////////////////////////////////
+
+    // a random lowercase word of 4 to 12 letters
+    private static String randomWord(Random random) {
+        char[] word = new char[4 + random.nextInt(9)];
+        for (int i = 0; i < word.length; ++i) { word[i] = (char) ('a' + random.nextInt(26)); }
+        return new String(word);
+    }
+
+    /**
+     * Number of occurrences of q in D, overlapping ones included: one KMP
+     * pass that keeps going after each match, falling back to the
+     * longest equifix of q instead of starting over.
+     */
+    private static int countByKMP(String q, String D) {
+        int[] E = new LongestEquifix().getEquifixLength(q);
+        int count = 0;
+        // q[0..i) matches the characters just before D[k]
+        int i = 0;
+        for (int k = 0; k < D.length(); ++k) {
+            while (i > 0 && q.charAt(i) != D.charAt(k)) { i = E[i - 1]; }
+            if (q.charAt(i) == D.charAt(k)) { ++i; }
+            if (i == q.length()) {
+                ++count;
+                i = E[i - 1];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * `keywords` random words searched in a text of about `textLength`
+     * characters, made of random words and keywords: one Aho-Corasick
+     * pass, against one KMP pass per keyword (timed on a sample and
+     * scaled up). Then the time to load the saved automaton against
+     * building it again.
+     */
+    private static void benchmark(int keywords, int textLength) throws IOException {
+        Random random = new Random(42);
+        String[] patterns = new String[keywords];
+        for (int k = 0; k < keywords; ++k) { patterns[k] = randomWord(random); }
+        StringBuilder text = new StringBuilder(textLength + 16);
+        while (text.length() < textLength) {
+            text.append(random.nextInt(10) == 0
+                    ? patterns[random.nextInt(keywords)] : randomWord(random)).append(' ');
+        }
+        String document = text.toString();
+
+        for (int round = 0; round < 2; ++round) {
+            long start = System.nanoTime();
+            AhoCorasick automaton = AhoCorasick.build(patterns);
+            long buildTime = System.nanoTime() - start;
+
+            final int[] counts = new int[keywords];
+            start = System.nanoTime();
+            automaton.search(document, new MatchListener() {
+                public void match(int pattern, int at) { ++counts[pattern]; }
+            });
+            long searchTime = System.nanoTime() - start;
+
+            // KMP on a sample, which also checks the counts
+            int sample = Math.min(keywords, 20);
+            int mismatches = 0;
+            start = System.nanoTime();
+            for (int k = 0; k < sample; ++k) {
+                if (countByKMP(patterns[k], document) != counts[k]) { ++mismatches; }
+            }
+            long kmpTime = (System.nanoTime() - start) / sample * keywords;
+
+            Path file = Files.createTempFile("ahocorasick", ".bin");
+            automaton.save(file);
+            start = System.nanoTime();
+            AhoCorasick loaded = AhoCorasick.load(file);
+            long loadTime = System.nanoTime() - start;
+            if (!Arrays.equals(loaded.findAll(document), automaton.findAll(document))) {
+                ++mismatches;
+            }
+            long fileSize = Files.size(file);
+            Files.delete(file);
+
+            System.out.println(keywords + " keywords, " + automaton.stateCount() + " states, "
+                    + document.length() + " chars: build " + buildTime / 1000000 + "ms, search "
+                    + searchTime / 1000000 + "ms; KMP per keyword (est.) " + kmpTime / 1000000000
+                    + "s; load " + loadTime / 1000000 + "ms from " + fileSize / 1024 + "KB"
+                    + (mismatches == 0 ? "" : "; " + mismatches + " MISMATCHES"));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String[] patterns = {"he", "she", "his", "hers", "abcabca", "bca"};
+        String text = "ushers abcabcabca";
+        AhoCorasick automaton = AhoCorasick.build(patterns);
+        System.out.println(automaton.stateCount() + " states for " + patterns.length + " patterns");
+        int[] matches = automaton.findAll(text);
+        for (int k = 0; k < matches.length; k += 2) {
+            System.out.println(patterns[matches[k]] + " at " + matches[k + 1]);
+        }
+
+        // with one pattern the failure links are the equifices
+        String s = "abcabca";
+        AhoCorasick single = AhoCorasick.build(new String[] {s});
+        int[] equifix = new LongestEquifix().getEquifixLength(s);
+        boolean same = true;
+        for (int i = 0; i < s.length(); ++i) {
+            // state i+1 is the prefix of length i+1; state j has length j
+            same &= single.fail[i + 1] == equifix[i];
+        }
+        System.out.println("failure links of " + s + " match LongestEquifix: " + same);
+        System.out.println();
+
+        benchmark(args.length > 0 ? Integer.parseInt(args[0]) : 50000,
+                args.length > 1 ? Integer.parseInt(args[1]) : 10000000);
+    }
+}
@@ -1,9 +1,25 @@
 package decomplexified;
 
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import decomplexified.util.Allocations;
+import decomplexified.util.CSRGraph;
+import decomplexified.util.IntGraph;
 import decomplexified.util.GraphNode;
+import decomplexified.util.RandomGraphs;
 
 /**
  * @author Alan
@@ -27,11 +43,12 @@ public class BFSGraph<T> {
 
     // an FIFO queue to remember nodes which have been visited
     // but not their children
-    private LinkedList<GraphNode<T>> frontLine = new LinkedList<>();
+    private ArrayDeque<GraphNode<T>> frontLine = new ArrayDeque<>();
     
     // a set to mark visited nodes, including the nodes that
     // entered the queue and then out of the queue
-    private HashSet<GraphNode<T>> visited = new HashSet<>();
+    private Set<GraphNode<T>> visited =
+            Collections.newSetFromMap(new IdentityHashMap<GraphNode<T>, Boolean>());
     
     public void traverse(GraphNode<T> root) {
         // if the tree is empty do nothing
@@ -40,6 +57,7 @@ public class BFSGraph<T> {
         // initialization
         parentNode = null;
         frontLine.clear();
+        visited.clear();
 
         // visit the root
         process(root);
@@ -51,7 +69,10 @@ public class BFSGraph<T> {
             parentNode = frontLine.pollLast();
 
             // add children to the queue
-            for (GraphNode<T> child : parentNode.neighbors) {
+            // indexed rather than with an iterator, which is not always
+            // optimized away and would cost an allocation per node
+            for (int i = 0; i < parentNode.neighbors.size(); ++i) {
+                GraphNode<T> child = parentNode.neighbors.get(i);
                 if (visited.contains(child)) { continue; }
                 process(child);
                 frontLine.addFirst(child);
@@ -61,6 +82,143 @@ public class BFSGraph<T> {
     }
 //end{graph-bfs-traverse}    
 
+    // action to be performed for a visited vertex of an IntGraph
+    protected void process(IntGraph graph, int vertex) {
+        System.out.println(graph.familyToString(vertex) +
+                "\tvisited as a child of " + parentVertex);
+    }
+    
+    // vertex whose children are currently being visited; -1 for none
+    protected int parentVertex = -1;
+    
+    // queue and visited marks of traverse(IntGraph, int), kept to be
+    // reused by the next traversal
+    private int[] vertexFrontLine = new int[0];
+    private BitSet visitedVertex = new BitSet();
+    
+    /**
+     * Same as traverse(root) on an IntGraph. The FIFO queue is a plain
+     * int[] with head and tail indices (every vertex enters it at most
+     * once), and visited marks are a bitmap indexed by vertex.
+     */
+    public void traverse(IntGraph graph, int root) {
+        int n = graph.vertexCount();
+        if (vertexFrontLine.length < n) { vertexFrontLine = new int[n]; }
+        int[] frontLine = vertexFrontLine;
+        visitedVertex.clear();
+        int head = 0;
+        int tail = 0;
+        
+        // visit the root
+        parentVertex = -1;
+        process(graph, root);
+        frontLine[tail++] = root;
+        visitedVertex.set(root);
+        
+        while (head < tail) {
+            // take out the oldest vertex
+            parentVertex = frontLine[head++];
+            
+            // add children to the queue
+            for (int e = graph.firstEdge(parentVertex); e < graph.endEdge(parentVertex); ++e) {
+                int child = graph.target(e);
+                if (visitedVertex.get(child)) { continue; }
+                process(graph, child);
+                frontLine[tail++] = child;
+                visitedVertex.set(child);
+            } // for
+        } // while
+    }
+
+    /**
+     * The nodes in the order traverse(root) processes them, computed on
+     * demand: a node's neighbors are only looked at when the node after
+     * it is asked for. Stop calling next() to stop the traversal.
+     * Each iterator has its own queue and visited set.
+     */
+    public Iterator<GraphNode<T>> iterator(final GraphNode<T> root) {
+        return new Iterator<GraphNode<T>>() {
+            private ArrayDeque<GraphNode<T>> queue = new ArrayDeque<>();
+            private Set<GraphNode<T>> seen =
+                    Collections.newSetFromMap(new IdentityHashMap<GraphNode<T>, Boolean>());
+            // the node returned last, whose neighbors are not queued yet
+            private GraphNode<T> pending = null;
+            {
+                if (root != null) {
+                    queue.addFirst(root);
+                    seen.add(root);
+                }
+            }
+
+            public boolean hasNext() {
+                if (pending != null) {
+                    for (int i = 0; i < pending.neighbors.size(); ++i) {
+                        GraphNode<T> child = pending.neighbors.get(i);
+                        if (seen.add(child)) { queue.addFirst(child); }
+                    }
+                    pending = null;
+                }
+                return !queue.isEmpty();
+            }
+
+            public GraphNode<T> next() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+                pending = queue.pollLast();
+                return pending;
+            }
+        };
+    }
+
+    // iterator(root) as a sequential stream, e.g. for filter and findFirst
+    public Stream<GraphNode<T>> stream(GraphNode<T> root) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(root),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    // same as iterator(root) on an IntGraph
+    public PrimitiveIterator.OfInt iterator(final IntGraph graph, final int root) {
+        return new PrimitiveIterator.OfInt() {
+            private int[] queue = new int[16];
+            private int head = 0;
+            private int tail = 0;
+            private BitSet seen = new BitSet(graph.vertexCount());
+            // the vertex returned last, whose children are not queued yet
+            private int pending = -1;
+            {
+                queue[tail++] = root;
+                seen.set(root);
+            }
+
+            public boolean hasNext() {
+                if (pending >= 0) {
+                    for (int e = graph.firstEdge(pending); e < graph.endEdge(pending); ++e) {
+                        int child = graph.target(e);
+                        if (seen.get(child)) { continue; }
+                        seen.set(child);
+                        if (tail == queue.length) {
+                            queue = Arrays.copyOf(queue, Math.min(2 * tail, graph.vertexCount()));
+                        }
+                        queue[tail++] = child;
+                    }
+                    pending = -1;
+                }
+                return head < tail;
+            }
+
+            public int nextInt() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+                pending = queue[head++];
+                return pending;
+            }
+        };
+    }
+
+    // iterator(graph, root) as a sequential stream
+    public IntStream stream(IntGraph graph, int root) {
+        return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(iterator(graph, root),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
     /**
      * Example showing how to use BFS to print a binary tree
      */
@@ -79,5 +237,49 @@ public class BFSGraph<T> {
         Integer[] values2 = {0,1,2,3,4,5,6,7,8,9};
         GraphNode<Integer> root2 = GraphNode.buildGraph(values2, families2).get(0);
         bfs.traverse(root2);
+
+        System.out.println("-----------");
+        CSRGraph graph2 = CSRGraph.buildGraph(values2.length, families2);
+        bfs.traverse(graph2, 0);
+
+        // pull nodes lazily and stop as soon as node 5 shows up
+        System.out.println("-----------");
+        for (Iterator<GraphNode<Integer>> it = bfs.iterator(root2); it.hasNext(); ) {
+            GraphNode<Integer> node = it.next();
+            System.out.println("pulled " + node);
+            if (node.value == 5) { break; }
+        }
+        System.out.println("first 4 vertices of the CSR graph: "
+                + Arrays.toString(bfs.stream(graph2, 0).limit(4).toArray()));
+
+        // repeat traversals of a large grid should not allocate, the one
+        // large benchmark of the traversals; pass the grid side as first
+        // argument
+        System.out.println("-----------");
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        Integer[][] grid = RandomGraphs.grid(side, side);
+        Integer[] gridValues = new Integer[grid.length];
+        for (int i = 0; i < gridValues.length; ++i) { gridValues[i] = i; }
+        GraphNode<Integer> corner = GraphNode.buildGraph(gridValues, grid).get(0);
+        CSRGraph csr = CSRGraph.buildGraph(grid.length, grid);
+        BFSGraph<Integer> silent = new BFSGraph<Integer>() {
+            protected void process(GraphNode<Integer> node) {}
+            protected void process(IntGraph graph, int vertex) {}
+        };
+        for (int round = 0; round < 5; ++round) {
+            long start = System.nanoTime();
+            long bytes = Allocations.allocatedBytes();
+            silent.traverse(corner);
+            long nodeTime = System.nanoTime() - start;
+            long nodeBytes = Allocations.allocatedBytes() - bytes;
+            start = System.nanoTime();
+            bytes = Allocations.allocatedBytes();
+            silent.traverse(csr, 0);
+            long csrTime = System.nanoTime() - start;
+            long csrBytes = Allocations.allocatedBytes() - bytes;
+            System.out.println(grid.length + " nodes: GraphNode " + nodeTime / 1000000
+                    + "ms, " + nodeBytes + " bytes allocated; IntGraph " + csrTime / 1000000
+                    + "ms, " + csrBytes + " bytes allocated");
+        }
     }
 }
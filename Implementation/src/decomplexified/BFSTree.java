@@ -1,7 +1,16 @@
 package decomplexified;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import decomplexified.util.Allocations;
+import decomplexified.util.RandomGraphs;
 import decomplexified.util.TreeNode;
 
 /**
@@ -26,7 +35,7 @@ public class BFSTree<T> {
 
     // an FIFO queue to remember nodes which have been visited
     // but not their children
-    private LinkedList<TreeNode<T>> frontLine = new LinkedList<>();
+    private ArrayDeque<TreeNode<T>> frontLine = new ArrayDeque<>();
     
     public void traverse(TreeNode<T> root) {
         // if the tree is empty do nothing
@@ -56,6 +65,46 @@ public class BFSTree<T> {
         } // while
     }
 //end{tree-bfs-traverse}
+
+    /**
+     * The nodes in the order traverse(root) processes them, computed on
+     * demand: a node's children are only looked at when the node after
+     * it is asked for. Stop calling next() to stop the traversal.
+     */
+    public Iterator<TreeNode<T>> iterator(final TreeNode<T> root) {
+        return new Iterator<TreeNode<T>>() {
+            private ArrayDeque<TreeNode<T>> queue = new ArrayDeque<>();
+            // the node returned last, whose children are not queued yet
+            private TreeNode<T> pending = null;
+            {
+                if (root != null) { queue.addFirst(root); }
+            }
+
+            public boolean hasNext() {
+                expandPending();
+                return !queue.isEmpty();
+            }
+
+            public TreeNode<T> next() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+                pending = queue.pollLast();
+                return pending;
+            }
+
+            private void expandPending() {
+                if (pending == null) { return; }
+                if (pending.left != null) { queue.addFirst(pending.left); }
+                if (pending.right != null) { queue.addFirst(pending.right); }
+                pending = null;
+            }
+        };
+    }
+
+    // iterator(root) as a sequential stream, e.g. for filter and findFirst
+    public Stream<TreeNode<T>> stream(TreeNode<T> root) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(root),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
     
     public static void main(String[] args) {
         Integer[][] family = {{0,1,2},{1,3,4},{2,5,6},{4,7,8},{6,9,null}};
@@ -73,5 +122,39 @@ public class BFSTree<T> {
 
         BFSTree<Integer> bfs = new BFSTree<Integer>();
         bfs.traverse(root);
+
+        // pull nodes lazily and stop at the first one with an odd value
+        System.out.println("-----------");
+        for (Iterator<TreeNode<Integer>> it = bfs.iterator(root); it.hasNext(); ) {
+            TreeNode<Integer> node = it.next();
+            System.out.println("pulled " + node);
+            if (node.value % 2 == 1) { break; }
+        }
+        System.out.println("first leaf with value > 5: " + bfs.stream(root)
+                .filter(new Predicate<TreeNode<Integer>>() {
+                    public boolean test(TreeNode<Integer> node) {
+                        return node.left == null && node.right == null && node.value > 5;
+                    }
+                }).findFirst().get());
+
+        // a traversal reuses the queue of the previous one; the second
+        // round shows it allocates nothing. Pass a node count to try a
+        // larger tree
+        System.out.println("-----------");
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        Integer[] treeValues = new Integer[n];
+        for (int i = 0; i < n; ++i) { treeValues[i] = i; }
+        TreeNode<Integer> treeRoot =
+                TreeNode.buildTree(treeValues, RandomGraphs.completeBinaryTree(n)).get(0);
+        BFSTree<Integer> silent = new BFSTree<Integer>() {
+            protected void process(TreeNode<Integer> node) {}
+        };
+        for (int round = 0; round < 2; ++round) {
+            long start = System.nanoTime();
+            long bytes = Allocations.allocatedBytes();
+            silent.traverse(treeRoot);
+            System.out.println(n + " nodes: " + (System.nanoTime() - start) / 1000000 + "ms, "
+                    + (Allocations.allocatedBytes() - bytes) + " bytes allocated");
+        }
     }
 }
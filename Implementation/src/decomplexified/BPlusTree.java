@@ -0,0 +1,561 @@
+package decomplexified;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import decomplexified.util.TreeNode2;
+
+/**
+ * @author Alan
+ *  B+-tree: an ordered set whose nodes hold up to `capacity` sorted keys
+ *  in an array, instead of one key per node. A lookup visits
+ *  log_capacity(n) nodes and binary-searches each, so a 10M-key tree with
+ *  capacity 64 is 4-5 levels deep where a balanced BST has 23+; each
+ *  level is one or two cache misses either way.
+ *
+ *  Keys are stored only in the leaves, which are chained left to right,
+ *  so a range scan walks down once and then along the chain (see
+ *  Cursor). Inner nodes hold separators: keys[i] is no greater than any
+ *  key below children[i+1] and greater than any key below children[i].
+ *  Every node but the root is at least half full, which insert keeps by
+ *  splitting full nodes and delete by borrowing from or merging with a
+ *  sibling.
+ *
+ *  Same semantics as AVLTree: a set, find returns the stored value.
+ *  LongBPlusTree is the same tree for primitive longs, with no boxing.
+ */
+public class BPlusTree<T extends Comparable<T>> {
+    // keys[0..count) are in use; the arrays have one spare slot so that
+    // a node can overflow before it is split
+    private static class Node {
+        int count;
+        Object[] keys;
+
+        Node(int capacity) { keys = new Object[capacity + 1]; }
+    }
+
+    private static class Leaf extends Node {
+        Leaf next;
+
+        Leaf(int capacity) { super(capacity); }
+    }
+
+    // count keys, count+1 children
+    private static class Inner extends Node {
+        Node[] children;
+
+        Inner(int capacity) {
+            super(capacity);
+            children = new Node[capacity + 2];
+        }
+    }
+
+    private final int capacity;
+    private Node root;
+    private int size = 0;
+
+    public BPlusTree() { this(64); }
+    // capacity: keys per node, at least 3
+    public BPlusTree(int capacity) {
+        if (capacity < 3) { throw new IllegalArgumentException("capacity < 3"); }
+        this.capacity = capacity;
+        root = new Leaf(capacity);
+    }
+
+    // trivial methods
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public void clear() {
+        root = new Leaf(capacity);
+        size = 0;
+    }
+    // number of levels; 1 for a single leaf
+    public int height() {
+        int height = 1;
+        for (Node node = root; node instanceof Inner; node = ((Inner) node).children[0]) {
+            ++height;
+        }
+        return height;
+    }
+
+    /* find a value. Return the value stored in the tree that equals
+     * the query, null if not found.
+     */
+    public T find(T query) {
+        Leaf leaf = findLeaf(query);
+        int i = lowerBound(leaf, query);
+        return i < leaf.count && compare(leaf, i, query) == 0 ? key(leaf, i) : null;
+    }
+
+    public boolean contains(T query) { return find(query) != null; }
+
+    /* insert a value. Return false if it was present already */
+    public boolean insert(T value) {
+        Node sibling = insert(root, value);
+        if (sibling == INSERTED) { return false; }
+        ++size;
+        if (sibling != null) {
+            // the root was split: grow a level
+            Inner newRoot = new Inner(capacity);
+            newRoot.keys[0] = separator;
+            newRoot.children[0] = root;
+            newRoot.children[1] = sibling;
+            newRoot.count = 1;
+            root = newRoot;
+        }
+        separator = null;
+        return true;
+    }
+
+    /* delete a value. Return false if it was not found */
+    public boolean delete(T value) {
+        if (!delete(root, value)) { return false; }
+        --size;
+        if (root instanceof Inner && root.count == 0) {
+            // the root lost its last separator: shrink a level
+            root = ((Inner) root).children[0];
+        }
+        return true;
+    }
+
+    // marks an insert that found the value already present
+    private static final Node INSERTED = new Node(0);
+    // separator between a split node and its new right sibling
+    private Object separator;
+
+    // helper: insert below node. Return the new right sibling if node
+    // was split (with separator set), INSERTED if value was present, or
+    // null.
+    private Node insert(Node node, T value) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int i = lowerBound(leaf, value);
+            if (i < leaf.count && compare(leaf, i, value) == 0) { return INSERTED; }
+            System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.count - i);
+            leaf.keys[i] = value;
+            return ++leaf.count > capacity ? splitLeaf(leaf) : null;
+        }
+
+        Inner inner = (Inner) node;
+        int i = upperBound(inner, value);
+        Node sibling = insert(inner.children[i], value);
+        if (sibling == null || sibling == INSERTED) { return sibling; }
+        // a child was split: add its sibling right after it
+        System.arraycopy(inner.keys, i, inner.keys, i + 1, inner.count - i);
+        System.arraycopy(inner.children, i + 1, inner.children, i + 2, inner.count - i);
+        inner.keys[i] = separator;
+        inner.children[i + 1] = sibling;
+        return ++inner.count > capacity ? splitInner(inner) : null;
+    }
+
+    // helper: move the upper half of an overfull leaf to a new leaf
+    private Leaf splitLeaf(Leaf leaf) {
+        Leaf right = new Leaf(capacity);
+        int half = leaf.count / 2;
+        right.count = leaf.count - half;
+        System.arraycopy(leaf.keys, half, right.keys, 0, right.count);
+        Arrays.fill(leaf.keys, half, leaf.count, null);
+        leaf.count = half;
+        right.next = leaf.next;
+        leaf.next = right;
+        separator = right.keys[0];
+        return right;
+    }
+
+    // helper: same for an inner node; the middle key moves up
+    private Inner splitInner(Inner inner) {
+        Inner right = new Inner(capacity);
+        int half = inner.count / 2;
+        right.count = inner.count - half - 1;
+        System.arraycopy(inner.keys, half + 1, right.keys, 0, right.count);
+        System.arraycopy(inner.children, half + 1, right.children, 0, right.count + 1);
+        separator = inner.keys[half];
+        Arrays.fill(inner.keys, half, inner.count, null);
+        Arrays.fill(inner.children, half + 1, inner.count + 1, null);
+        inner.count = half;
+        return right;
+    }
+
+    // helper: delete below node; return false if value was not found.
+    // A child left less than half full is fixed by its parent.
+    private boolean delete(Node node, T value) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int i = lowerBound(leaf, value);
+            if (i == leaf.count || compare(leaf, i, value) != 0) { return false; }
+            System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.count - i - 1);
+            leaf.keys[--leaf.count] = null;
+            return true;
+        }
+
+        Inner inner = (Inner) node;
+        int i = upperBound(inner, value);
+        if (!delete(inner.children[i], value)) { return false; }
+        if (inner.children[i].count < capacity / 2) { fixChild(inner, i); }
+        return true;
+    }
+
+    // helper: refill children[i] from a sibling, or merge it with one
+    private void fixChild(Inner parent, int i) {
+        // work on the pair (children[s], children[s+1]) around keys[s]
+        int s = i > 0 ? i - 1 : i;
+        Node left = parent.children[s];
+        Node right = parent.children[s + 1];
+        Node sibling = s == i ? right : left;
+        if (sibling.count > capacity / 2) {
+            if (sibling == left) {
+                borrowFromLeft(parent, s, left, right);
+            } else {
+                borrowFromRight(parent, s, left, right);
+            }
+            return;
+        }
+
+        // both at most half full: merge right into left
+        if (left instanceof Leaf) {
+            System.arraycopy(right.keys, 0, left.keys, left.count, right.count);
+            left.count += right.count;
+            ((Leaf) left).next = ((Leaf) right).next;
+        } else {
+            left.keys[left.count] = parent.keys[s];
+            System.arraycopy(right.keys, 0, left.keys, left.count + 1, right.count);
+            System.arraycopy(((Inner) right).children, 0,
+                    ((Inner) left).children, left.count + 1, right.count + 1);
+            left.count += right.count + 1;
+        }
+        System.arraycopy(parent.keys, s + 1, parent.keys, s, parent.count - s - 1);
+        System.arraycopy(parent.children, s + 2, parent.children, s + 1, parent.count - s - 1);
+        parent.keys[parent.count - 1] = null;
+        parent.children[parent.count] = null;
+        --parent.count;
+    }
+
+    // helper: move the last key (and child) of left to the front of right
+    private void borrowFromLeft(Inner parent, int s, Node left, Node right) {
+        System.arraycopy(right.keys, 0, right.keys, 1, right.count);
+        if (right instanceof Leaf) {
+            right.keys[0] = left.keys[left.count - 1];
+            parent.keys[s] = right.keys[0];
+        } else {
+            Node[] children = ((Inner) right).children;
+            System.arraycopy(children, 0, children, 1, right.count + 1);
+            children[0] = ((Inner) left).children[left.count];
+            ((Inner) left).children[left.count] = null;
+            right.keys[0] = parent.keys[s];
+            parent.keys[s] = left.keys[left.count - 1];
+        }
+        left.keys[--left.count] = null;
+        ++right.count;
+    }
+
+    // helper: move the first key (and child) of right to the end of left
+    private void borrowFromRight(Inner parent, int s, Node left, Node right) {
+        if (left instanceof Leaf) {
+            left.keys[left.count] = right.keys[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.count - 1);
+            parent.keys[s] = right.keys[0];
+        } else {
+            Node[] children = ((Inner) right).children;
+            left.keys[left.count] = parent.keys[s];
+            ((Inner) left).children[left.count + 1] = children[0];
+            parent.keys[s] = right.keys[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.count - 1);
+            System.arraycopy(children, 1, children, 0, right.count);
+            children[right.count] = null;
+        }
+        right.keys[--right.count] = null;
+        ++left.count;
+    }
+
+    /**
+     * Build a tree from values in strictly increasing order in O(n), with
+     * full leaves; much faster than n inserts.
+     */
+    public static <T extends Comparable<T>> BPlusTree<T> bulkLoad(T[] sorted, int capacity) {
+        BPlusTree<T> tree = new BPlusTree<>(capacity);
+        int n = sorted.length;
+        if (n == 0) { return tree; }
+        for (int i = 1; i < n; ++i) {
+            if (sorted[i - 1].compareTo(sorted[i]) >= 0) {
+                throw new IllegalArgumentException("not strictly increasing at " + i);
+            }
+        }
+
+        // the leaves
+        int[] sizes = groupSizes(n, capacity, capacity / 2);
+        Node[] level = new Node[sizes.length];
+        Object[] lowest = new Object[sizes.length];
+        int from = 0;
+        for (int k = 0; k < sizes.length; ++k) {
+            Leaf leaf = new Leaf(capacity);
+            System.arraycopy(sorted, from, leaf.keys, 0, sizes[k]);
+            leaf.count = sizes[k];
+            if (k > 0) { ((Leaf) level[k - 1]).next = leaf; }
+            level[k] = leaf;
+            lowest[k] = sorted[from];
+            from += sizes[k];
+        }
+
+        // inner levels: each node takes up to capacity+1 children, with the
+        // lowest key below each child but the first as separator
+        while (level.length > 1) {
+            sizes = groupSizes(level.length, capacity + 1, capacity / 2 + 1);
+            Node[] upper = new Node[sizes.length];
+            Object[] upperLowest = new Object[sizes.length];
+            from = 0;
+            for (int k = 0; k < sizes.length; ++k) {
+                Inner inner = new Inner(capacity);
+                System.arraycopy(level, from, inner.children, 0, sizes[k]);
+                System.arraycopy(lowest, from + 1, inner.keys, 0, sizes[k] - 1);
+                inner.count = sizes[k] - 1;
+                upper[k] = inner;
+                upperLowest[k] = lowest[from];
+                from += sizes[k];
+            }
+            level = upper;
+            lowest = upperLowest;
+        }
+        tree.root = level[0];
+        tree.size = n;
+        return tree;
+    }
+
+    // helper: split n items into groups of at most max, all but the last
+    // full; the last two share evenly if the last would be under min
+    static int[] groupSizes(int n, int max, int min) {
+        int groups = (n + max - 1) / max;
+        int[] sizes = new int[groups];
+        Arrays.fill(sizes, max);
+        sizes[groups - 1] = n - (groups - 1) * max;
+        if (groups > 1 && sizes[groups - 1] < min) {
+            int pair = max + sizes[groups - 1];
+            sizes[groups - 2] = pair - pair / 2;
+            sizes[groups - 1] = pair / 2;
+        }
+        return sizes;
+    }
+
+    /**
+     * Cursor over the values in [lo, hi) in increasing order; null bounds
+     * are open. It reads the leaves in place, so the tree must not be
+     * modified while a cursor is in use.
+     */
+    public Iterator<T> cursor(T lo, T hi) { return new Cursor(lo, hi); }
+
+    private class Cursor implements Iterator<T> {
+        private Leaf leaf;
+        private int i;
+        private final T hi;
+
+        private Cursor(T lo, T hi) {
+            this.hi = hi;
+            if (lo == null) {
+                Node node = root;
+                while (node instanceof Inner) { node = ((Inner) node).children[0]; }
+                leaf = (Leaf) node;
+                i = 0;
+            } else {
+                leaf = findLeaf(lo);
+                i = lowerBound(leaf, lo);
+            }
+            skipToKey();
+        }
+
+        public boolean hasNext() {
+            return leaf != null && (hi == null || compare(leaf, i, hi) < 0);
+        }
+
+        public T next() {
+            if (!hasNext()) { throw new NoSuchElementException(); }
+            T value = key(leaf, i++);
+            skipToKey();
+            return value;
+        }
+
+        // helper: move on to the next leaf at the end of this one
+        private void skipToKey() {
+            while (leaf != null && i == leaf.count) {
+                leaf = leaf.next;
+                i = 0;
+            }
+        }
+    }
+
+    // helper: the leaf where query is or would be
+    private Leaf findLeaf(T query) {
+        Node node = root;
+        while (node instanceof Inner) {
+            node = ((Inner) node).children[upperBound(node, query)];
+        }
+        return (Leaf) node;
+    }
+
+    // helper: first index whose key is >= value
+    private int lowerBound(Node node, T value) {
+        int lo = 0;
+        int hi = node.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(node, mid, value) < 0) { lo = mid + 1; } else { hi = mid; }
+        }
+        return lo;
+    }
+
+    // helper: first index whose key is > value, i.e. the child to follow
+    private int upperBound(Node node, T value) {
+        int lo = 0;
+        int hi = node.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(node, mid, value) <= 0) { lo = mid + 1; } else { hi = mid; }
+        }
+        return lo;
+    }
+
+    private int compare(Node node, int i, T value) {
+        return key(node, i).compareTo(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T key(Node node, int i) { return (T) node.keys[i]; }
+
+///////////////////////////////////////////////////////////////
+
+    // sum of the BST values in [lo, hi); BST has no cursor of its own
+    private static long bstRange(TreeNode2<Long> node, long lo, long hi) {
+        long sum = 0;
+        while (node != null) {
+            if (node.value < lo) {
+                node = node.right;
+            } else if (node.value >= hi) {
+                node = node.left;
+            } else {
+                sum += node.value + bstRange(node.left, lo, hi);
+                node = node.right;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Random lookups and range scans of 100 keys over n random keys
+     * (pass n as first argument; BST and TreeMap need about 50 and 60
+     * bytes per key, so give the JVM enough heap). BST and TreeMap are
+     * built by inserting in random order, the B+-trees by bulk load.
+     */
+    private static void benchmark(int n) {
+        Random random = new Random(42);
+        long[] keys = new long[n];
+        for (int i = 0; i < n; ++i) { keys[i] = random.nextLong() >>> 1; }
+        long[] sortedKeys = keys.clone();
+        Arrays.sort(sortedKeys);
+        int lookups = 1000000;
+        int scans = 100000;
+        long[] queries = new long[lookups];
+        for (int i = 0; i < lookups; ++i) { queries[i] = keys[random.nextInt(n)]; }
+        // scan from a key to the one 100 positions later
+        long[] scanFrom = new long[scans];
+        long[] scanTo = new long[scans];
+        for (int i = 0; i < scans; ++i) {
+            int k = random.nextInt(Math.max(n - 100, 1));
+            scanFrom[i] = sortedKeys[k];
+            scanTo[i] = sortedKeys[Math.min(k + 100, n - 1)];
+        }
+        System.out.println(n + " keys, " + lookups + " lookups, " + scans + " scans of 100 keys");
+
+        for (int round = 0; round < 2; ++round) {
+            long sum = 0;
+            {
+                BST<Long> bst = new BST<>();
+                TreeNode2<Long> root = null;
+                long start = System.nanoTime();
+                for (long key : keys) { root = bst.insert(root, key); }
+                long build = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (long query : queries) { sum += bst.find(root, query).value; }
+                long find = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < scans; ++i) { sum += bstRange(root, scanFrom[i], scanTo[i]); }
+                long scan = System.nanoTime() - start;
+                report("BST", build, find, scan);
+            }
+            {
+                TreeMap<Long, Boolean> map = new TreeMap<>();
+                long start = System.nanoTime();
+                for (long key : keys) { map.put(key, Boolean.TRUE); }
+                long build = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (long query : queries) { sum += map.containsKey(query) ? 1 : 0; }
+                long find = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < scans; ++i) {
+                    for (long key : map.subMap(scanFrom[i], scanTo[i]).keySet()) { sum += key; }
+                }
+                long scan = System.nanoTime() - start;
+                report("TreeMap", build, find, scan);
+            }
+            {
+                Long[] boxed = new Long[n];
+                for (int i = 0; i < n; ++i) { boxed[i] = sortedKeys[i]; }
+                long start = System.nanoTime();
+                BPlusTree<Long> tree = BPlusTree.bulkLoad(boxed, 64);
+                long build = System.nanoTime() - start;
+                boxed = null;
+                start = System.nanoTime();
+                for (long query : queries) { sum += tree.find(query); }
+                long find = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < scans; ++i) {
+                    Iterator<Long> cursor = tree.cursor(scanFrom[i], scanTo[i]);
+                    while (cursor.hasNext()) { sum += cursor.next(); }
+                }
+                long scan = System.nanoTime() - start;
+                report("BPlusTree<Long>", build, find, scan);
+            }
+            {
+                long start = System.nanoTime();
+                LongBPlusTree tree = LongBPlusTree.bulkLoad(sortedKeys, 0, n, 64);
+                long build = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (long query : queries) { sum += tree.contains(query) ? 1 : 0; }
+                long find = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < scans; ++i) {
+                    LongBPlusTree.Cursor cursor = tree.cursor(scanFrom[i], scanTo[i]);
+                    while (cursor.hasNext()) { sum += cursor.nextLong(); }
+                }
+                long scan = System.nanoTime() - start;
+                report("LongBPlusTree", build, find, scan);
+            }
+            System.out.println("  (checksum " + sum + ")");
+        }
+    }
+
+    private static void report(String name, long build, long find, long scan) {
+        System.out.println("  " + name + ": build " + build / 1000000 + "ms, lookups "
+                + find / 1000000 + "ms, scans " + scan / 1000000 + "ms");
+    }
+
+    public static void main(String[] args) {
+        // small capacity, so that the demo splits and merges
+        BPlusTree<Integer> tree = new BPlusTree<>(4);
+        for (int value = 1; value <= 30; ++value) { tree.insert(value); }
+        System.out.println("After inserting 1 .. 30: size " + tree.size()
+                + ", height " + tree.height());
+        System.out.println("insert 7 again --> " + tree.insert(7));
+        System.out.println("find 7 --> " + tree.find(7) + ", find 31 --> " + tree.find(31));
+        for (int value = 1; value <= 30; value += 2) { tree.delete(value); }
+        System.out.println("After deleting the odd values: size " + tree.size()
+                + ", height " + tree.height());
+        System.out.print("[10, 20) -->");
+        Iterator<Integer> cursor = tree.cursor(10, 20);
+        while (cursor.hasNext()) { System.out.print(" " + cursor.next()); }
+        System.out.println();
+        System.out.println();
+
+        benchmark(args.length > 0 ? Integer.parseInt(args[0]) : 10000000);
+    }
+}
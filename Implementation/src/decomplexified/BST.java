@@ -33,7 +33,7 @@ public class BST<T extends Comparable<T>> {
     /* insert a new value into a BST . Return the new root */
     public TreeNode2<T> insert(TreeNode2<T> root, T value) {
         TreeNode2<T> node = root;
-        TreeNode2<T> parent = root.parent;        
+        TreeNode2<T> parent = null;
         boolean attachAsLeft = true;
         
         // search for attaching point
@@ -71,12 +71,12 @@ public class BST<T extends Comparable<T>> {
     
 //begin{delete}    
     /* delete a node and return the new root */
-    private TreeNode2<T> delete(TreeNode2<T> root, T value) {
+    public TreeNode2<T> delete(TreeNode2<T> root, T value) {
         // first find the node that has the value
         TreeNode2<T> node = find(root, value);
 
-        // not found
-        if (node == null) { return null; }
+        // not found: nothing changes
+        if (node == null) { return root; }
 
         // search for a leaf to delete; swap values along the way
         while (true) {
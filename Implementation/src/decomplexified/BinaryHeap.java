@@ -1,6 +1,7 @@
 package decomplexified;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
 
 /**
@@ -11,9 +12,27 @@ import java.util.Comparator;
 public class BinaryHeap<T extends Comparable<T>> {
     protected ArrayList<T> nodes = new ArrayList<>();
     protected Comparator<T> comparator = null;
+    
+    // number of children per node; 2 gives the classic binary heap.
+    // A wider heap (4 or 8) is shallower, so sifting up is cheaper and
+    // the children of a node share fewer cache lines.
+    protected int arity = 2;
 
     BinaryHeap() { comparator = null; }
     BinaryHeap(Comparator<T> c) { comparator = c; }
+    BinaryHeap(int d) { this(d, null); }
+    BinaryHeap(int d, Comparator<T> c) {
+        if (d < 2) {
+            throw new IllegalArgumentException("arity must be at least 2: " + d);
+        }
+        arity = d;
+        comparator = c;
+    }
+    // build a heap out of the given values in O(n)
+    BinaryHeap(Collection<? extends T> values) {
+        nodes.addAll(values);
+        heapify();
+    }
     
     // simple methods
     public T top() { return nodes.get(0); }
@@ -25,10 +44,7 @@ public class BinaryHeap<T extends Comparable<T>> {
         nodes.add(value);
         
         // move the last node up its proper position
-        Integer i = nodes.size()-1;
-        while ( i != null ) {
-            i = swapWithParent(i);
-        }
+        siftUp(nodes.size()-1, value);
     }
     
     // remove top value
@@ -36,71 +52,153 @@ public class BinaryHeap<T extends Comparable<T>> {
         if (nodes.isEmpty()) { return null; }       
         T topValue = nodes.get(0);
 
-        // put the value of the last node inside the
-        // root node then delete the last node
+        // take out the last node; its value goes into the hole
+        // left at the root, unless the root was the last node
         int lastIndex = nodes.size() - 1;
-        nodes.set(0, nodes.get(lastIndex));
-        nodes.remove(lastIndex);
+        T lastValue = nodes.remove(lastIndex);
         
         // move the root down to its proper position
-        Integer i = 0;
-        while ( i != null ) {
-            i = swapWithSmallerChild(i);
+        if (lastIndex > 0) {
+            siftDown(0, lastValue);
         }
         
         return topValue;
     }
     
     /**
-     * helper: swap a node with its parent if parent is larger
-     * @param i index of current node
-     * @return index of parent if swapped, null otherwise
+     * Push a batch of k values into a heap of n. A small batch is pushed
+     * one by one, O(k log n); a batch large enough that k log n exceeds n
+     * is appended and the whole heap rebuilt bottom-up (Floyd's method)
+     * in O(n + k) instead. Either way the cost is at most the smaller of
+     * the two.
+     * @param values values to be pushed
      */
-    protected Integer swapWithParent(int i) {
-        int p = (i-1)/2;
-        if (p >=0 && compareNodes(p, i) > 0) {
-            Collections.swap(nodes, i, p);
-            return p;
+    public void pushAll(Collection<? extends T> values) {
+        if (!heapifyCheaper(values.size())) {
+            for (T value : values) {
+                push(value);
+            }
+            return;
         }
-        return null;
+        nodes.addAll(values);
+        heapify();
     }
-
+    
     /**
-     * helper: swap a node with its smaller child.
-     * @param i index of current node
-     * @return index of smaller child if swapped, -1 otherwise
+     * Remove the top k values, smallest first.
+     * @param k number of values to remove
+     * @param output receives the removed values from index 0 on;
+     *        must hold at least k values
+     * @return number of values removed, less than k if the heap
+     *         runs out of values
      */
-    protected Integer swapWithSmallerChild(int i) {
-        // child indices
-        int L = 2*i+1;
-        if (L >= nodes.size()) {
-            // current node is a leaf
-            return null;
+    public int popN(int k, T[] output) {
+        if (k < 0 || output.length < k) {
+            throw new IllegalArgumentException("cannot pop " + k
+                    + " values into an array of " + output.length);
         }
-
-        // find out which child is smaller
-        int smallerChild = L;        
-        int R = L + 1;
-        if (R < nodes.size() && compareNodes(L, R) > 0) {
-                smallerChild = R;
+        int count = Math.min(k, nodes.size());
+        for (int j = 0; j < count; ++j) {
+            output[j] = pop();
+        }
+        return count;
+    }
+    
+    /**
+     * helper: restore the heap order of all nodes by moving every
+     * internal node down, starting from the last one. Most nodes are
+     * near the bottom and move only a few levels, hence O(n) in total.
+     */
+    protected void heapify() {
+        for (int i = (nodes.size()-2)/arity; i >= 0; --i) {
+            siftDown(i, nodes.get(i));
+        }
+    }
+    
+    /**
+     * helper: whether adding k values is cheaper by heapify, O(n + k),
+     * than by k sift-ups, O(k log n); roughly when k > n / log n.
+     */
+    protected boolean heapifyCheaper(int k) {
+        int n = nodes.size() + k;
+        int log = 32 - Integer.numberOfLeadingZeros(n);
+        return (long) k * log > n;
+    }
+    
+    /**
+     * helper: treat index i as a hole and move it up, pulling larger
+     * parents down, until value fits. Each level costs one write
+     * instead of a three-write swap.
+     * @param i index of the hole
+     * @param value value to be placed
+     * @return index where value ends up
+     */
+    protected int siftUp(int i, T value) {
+        while (i > 0) {
+            int p = (i-1)/arity;
+            T parent = nodes.get(p);
+            if (compareValues(parent, value) <= 0) { break; }
+            setNode(i, parent);
+            i = p;
         }
+        setNode(i, value);
+        return i;
+    }
 
-        // swap with the smaller child if necessary
-        if (compareNodes(i, smallerChild) > 0) {
-            Collections.swap(nodes, smallerChild, i);
-            return  smallerChild;
+    /**
+     * helper: treat index i as a hole and move it down, pulling the
+     * smallest child up, until value fits.
+     * @param i index of the hole
+     * @param value value to be placed
+     * @return index where value ends up
+     */
+    protected int siftDown(int i, T value) {
+        int n = nodes.size();
+        while (true) {
+            // child indices
+            int first = arity*i+1;
+            if (first >= n) {
+                // current node is a leaf
+                break;
+            }
+
+            // find out which child is smallest
+            int smallestChild = first;
+            T child = nodes.get(first);
+            int last = Math.min(first + arity, n);
+            for (int c = first + 1; c < last; ++c) {
+                T other = nodes.get(c);
+                if (compareValues(child, other) > 0) {
+                    smallestChild = c;
+                    child = other;
+                }
+            }
+
+            // stop if value is no larger than the smallest child
+            if (compareValues(value, child) <= 0) { break; }
+            setNode(i, child);
+            i = smallestChild;
         }
-        return null;
+        setNode(i, value);
+        return i;
+    }
+    
+    /**
+     * helper: place a value at index i. Subclasses override it to
+     * keep track of where values are.
+     */
+    protected void setNode(int i, T value) {
+        nodes.set(i, value);
     }
     
     // comparison method for convenience
-    private int compareNodes(int i, int j) {
+    private int compareValues(T a, T b) {
         if (comparator == null) {
             // use default comparator
-            return nodes.get(i).compareTo(nodes.get(j));
+            return a.compareTo(b);
         } else {
             // use customized comparator
-            return comparator.compare(nodes.get(i), nodes.get(j));
+            return comparator.compare(a, b);
         }
     }    
 //end{binary-heap}
@@ -115,7 +213,7 @@ public class BinaryHeap<T extends Comparable<T>> {
         for (T v : nodes) {
             if (count == limit) {
                 result.append("\n");
-                limit *= 2;
+                limit *= arity;
                 count = 0;
             }
             result.append(v + " ");
@@ -127,11 +225,8 @@ public class BinaryHeap<T extends Comparable<T>> {
 /////////////////////////////////////////////////////////////////////
 
     private static void pushTest() {
-        BinaryHeap<Integer> heap = new BinaryHeap<>();
-        int[] values = {1,5,3,7,7,4,6,8,8,8,9,5,5,8,7,9,8,8};
-        for (int v : values) {
-            heap.nodes.add(v);
-        }
+        Integer[] values = {1,5,3,7,7,4,6,8,8,8,9,5,5,8,7,9,8,8};
+        BinaryHeap<Integer> heap = new BinaryHeap<>(Arrays.asList(values));
         System.out.println("before:");
         System.out.println(heap);
 
@@ -142,11 +237,8 @@ public class BinaryHeap<T extends Comparable<T>> {
     }
     
     private static void popTest() {
-        BinaryHeap<Integer> heap = new BinaryHeap<>();
-        int[] values = {1,5,3,7,7,4,6,8,8,8,9,9,8,8,7,9,8,8};
-        for (int v : values) {
-            heap.nodes.add(v);
-        }
+        Integer[] values = {1,5,3,7,7,4,6,8,8,8,9,9,8,8,7,9,8,8};
+        BinaryHeap<Integer> heap = new BinaryHeap<>(Arrays.asList(values));
         System.out.println("before:");
         System.out.println(heap);
 
@@ -155,9 +247,49 @@ public class BinaryHeap<T extends Comparable<T>> {
         System.out.println(heap);        
     }
     
+    private static void bulkTest() {
+        Integer[] values = {9,8,7,6,5,4,3,2,1};
+        BinaryHeap<Integer> heap = new BinaryHeap<>();
+        heap.pushAll(Arrays.asList(values));
+        System.out.println("heapified:");
+        System.out.println(heap);
+
+        Integer[] top = new Integer[4];
+        int count = heap.popN(top.length, top);
+        System.out.println("top " + count + ": " + Arrays.toString(top));
+        System.out.println(heap);
+    }
+    
+    // push/pop throughput on n random values; pass n as first argument
+    private static void benchmark(int n) {
+        java.util.Random random = new java.util.Random(42);
+        Integer[] values = new Integer[n];
+        for (int i = 0; i < n; ++i) { values[i] = random.nextInt(); }
+
+        for (int round = 0; round < 3; ++round) {
+            BinaryHeap<Integer> heap = new BinaryHeap<>();
+            long start = System.nanoTime();
+            for (Integer v : values) { heap.push(v); }
+            long pushed = System.nanoTime();
+            while (!heap.isEmpty()) { heap.pop(); }
+            long popped = System.nanoTime();
+            heap.pushAll(Arrays.asList(values));
+            long heapified = System.nanoTime();
+            // a small batch into the full heap: sifted up, not rebuilt
+            heap.pushAll(Arrays.asList(values).subList(0, Math.min(n, 100)));
+            long batched = System.nanoTime();
+            System.out.println("n=" + n + " push: " + (pushed - start)/1000000
+                    + "ms, pop: " + (popped - pushed)/1000000 + "ms"
+                    + ", pushAll: " + (heapified - popped)/1000000 + "ms"
+                    + ", pushAll of 100 more: " + (batched - heapified)/1000 + "us");
+        }
+    }
+    
     public static void main(String[] args) {
         pushTest();
         popTest();
+        bulkTest();
+        benchmark(args.length > 0 ? Integer.parseInt(args[0]) : 1000000);
     }
 
 }
@@ -1,4 +1,6 @@
 package decomplexified;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 
 import decomplexified.util.WeightedValue;
@@ -9,10 +11,20 @@ import decomplexified.util.WeightedValue;
  */
 //begin{priority-queue}
 public class BinaryPriorityQueue<T,W extends Comparable<W>>
-        extends BinaryHeap<WeightedValue<T,W>> {
+        extends BinaryHeap<WeightedValue<T,W>>
+        implements MinPriorityQueue<T,W> {
 
     private HashMap<T, Integer> valueLocation = new HashMap<>();
     
+    public BinaryPriorityQueue() { super(); }
+    // backed by a d-ary heap, e.g. arity 4 or 8
+    public BinaryPriorityQueue(int arity) { super(arity); }
+    // build a queue out of the given value-priority pairs in O(n)
+    public BinaryPriorityQueue(Collection<WeightedValue<T,W>> vps) {
+        super();
+        pushAll(vps);
+    }
+    
     // trivial methods
     public void clear() {
         nodes.clear();
@@ -45,74 +57,74 @@ public class BinaryPriorityQueue<T,W extends Comparable<W>>
         Integer i = valueLocation.get(vp.value);
         
         if (i == null) {
-            // if it's a new value add a new node
+            // if it's a new value add a new node and move it up
             nodes.add(vp);
-            i = nodes.size() - 1;
-            valueLocation.put(vp.value, i);
+            siftUp(nodes.size() - 1, vp);
         } else {
-            // if it exists, reset its priority
-            nodes.set(i, vp);
-
-            // attempt to move it down first. Note that we don't
-            // use i!=null for while-condition so as to keep i
-            // in case no swap is done.
-            while (true) {
-                Integer c = swapWithSmallerChild(i);
-                if (c == null) { break; }
-                valueLocation.put(nodes.get(c).value, c);
-                valueLocation.put(nodes.get(i).value, i);
-                i = c;
+            // if it exists, reset its priority: attempt to move
+            // it down first, and up if it did not move down
+            if (siftDown(i, vp) == i) {
+                siftUp(i, vp);
             }
         }
-
-        // move the node up to its proper location
-        while (i != null) {
-            Integer p = swapWithParent(i);
-            if (p != null) {
-                valueLocation.put(nodes.get(p).value, p);
-                valueLocation.put(nodes.get(i).value, i);
+    }
+    
+    /**
+     * Insert a batch of value-priority pairs, updating the priority of
+     * values that exist already. If a value appears more than once in
+     * the batch, its last priority wins. As in BinaryHeap.pushAll, a
+     * small batch is pushed one by one and a large one heapified.
+     */
+    @Override
+    public void pushAll(Collection<? extends WeightedValue<T,W>> vps) {
+        if (!heapifyCheaper(vps.size())) {
+            for (WeightedValue<T,W> vp : vps) {
+                push(vp);
             }
-            i = p;
+            return;
         }
+        for (WeightedValue<T,W> vp : vps) {
+            Integer i = valueLocation.get(vp.value);
+            if (i == null) {
+                nodes.add(vp);
+                valueLocation.put(vp.value, nodes.size() - 1);
+            } else {
+                nodes.set(i, vp);
+            }
+        }
+        heapify();
     }
     
     // remove top value
+    @Override
     public WeightedValue<T,W> pop() {
-        if (nodes.isEmpty()) { return null; }       
-        WeightedValue<T,W> topValue = nodes.get(0);
-
-        // put the value of the last node inside the
-        // root node then delete the last node
-        int lastIndex = nodes.size() - 1;
-        nodes.set(0, nodes.get(lastIndex));
-        nodes.remove(lastIndex);
-        valueLocation.remove(topValue.value);
-        
-        // move the root down to its proper position
-        Integer i = 0;
-        while ( i != null) {
-            Integer c = swapWithSmallerChild(i);
-            if (c != null ) {
-                valueLocation.put(nodes.get(c).value, c);
-                valueLocation.put(nodes.get(i).value, i);
-            }
-            i = c;
+        WeightedValue<T,W> topValue = super.pop();
+        if (topValue != null) {
+            valueLocation.remove(topValue.value);
         }
         return topValue;
     }
+    
+    // every move of a node goes through here, so the location
+    // map is updated once per move rather than twice per swap
+    @Override
+    protected void setNode(int i, WeightedValue<T,W> vp) {
+        nodes.set(i, vp);
+        valueLocation.put(vp.value, i);
+    }
 //end{priority-queue}
 
 /////////////////////////////////////////////////////////////////////
 
     private static void pushNewTest() {
-        BinaryPriorityQueue<String, Integer> pQueue = new BinaryPriorityQueue<>();
         String[] values = {"1","5","3","7a","7b","4","6","8a","8b","8c",
                             "9a","5a","5b","8d","7c","9b","8e","8f"};
         Integer[] priorities = {1, 5, 3, 7, 7, 4, 6, 8, 8, 8, 9, 5, 5, 8, 7, 9, 8, 8};
+        ArrayList<WeightedValue<String, Integer>> vps = new ArrayList<>();
         for (int i =0; i < values.length; ++i) {
-            pQueue.nodes.add(new WeightedValue<String, Integer>(values[i], priorities[i]));
-            pQueue.valueLocation.put(values[i], i);
+            vps.add(new WeightedValue<String, Integer>(values[i], priorities[i]));
         }
+        BinaryPriorityQueue<String, Integer> pQueue = new BinaryPriorityQueue<>(vps);
 
         System.out.println("---------------");
         System.out.println("before:");
@@ -126,14 +138,14 @@ public class BinaryPriorityQueue<T,W extends Comparable<W>>
     }
 
     private static void pushExistedTest() {
-        BinaryPriorityQueue<String, Integer> pQueue = new BinaryPriorityQueue<>();
         String[] values = {"1","5","3","7a","7b","4","6","8a","8b","8c",
                             "9a","5a","5b","8d","7c","9b","8e","8f"};
         Integer[] priorities = {1, 5, 3, 7, 7, 4, 6, 8, 8, 8, 9, 5, 5, 8, 7, 9, 8, 8};
+        ArrayList<WeightedValue<String, Integer>> vps = new ArrayList<>();
         for (int i =0; i < values.length; ++i) {
-            pQueue.nodes.add(new WeightedValue<String, Integer>(values[i], priorities[i]));
-            pQueue.valueLocation.put(values[i], i);
+            vps.add(new WeightedValue<String, Integer>(values[i], priorities[i]));
         }
+        BinaryPriorityQueue<String, Integer> pQueue = new BinaryPriorityQueue<>(vps);
         System.out.println("---------------");
         System.out.println("before:");
         System.out.println(pQueue);
@@ -152,14 +164,14 @@ public class BinaryPriorityQueue<T,W extends Comparable<W>>
     }
 
     private static void popTest() {
-        BinaryPriorityQueue<String, Integer> pQueue = new BinaryPriorityQueue<>();
         String[] values = {"1","5","3","7a","7b","4","6","8a","8b","8c",
                            "9a","9b","8d","8e","7c","9c","8f","8g"};
         Integer[] priorities = { 1, 5, 3, 7, 7, 4, 6, 8, 8, 8, 9, 9, 8, 8, 7, 9, 8, 8 };
+        ArrayList<WeightedValue<String, Integer>> vps = new ArrayList<>();
         for (int i =0; i < values.length; ++i) {
-            pQueue.nodes.add(new WeightedValue<String, Integer>(values[i], priorities[i]));
-            pQueue.valueLocation.put(values[i], i);
+            vps.add(new WeightedValue<String, Integer>(values[i], priorities[i]));
         }
+        BinaryPriorityQueue<String, Integer> pQueue = new BinaryPriorityQueue<>(vps);
 
         System.out.println("---------------");
         System.out.println("before:");
@@ -171,9 +183,49 @@ public class BinaryPriorityQueue<T,W extends Comparable<W>>
         System.out.println(pQueue);
     }
 
+    // compare arities on push-heavy, pop-heavy and decrease-key-heavy
+    // mixes over n values; pass n as first argument
+    private static void benchmark(int n) {
+        java.util.Random random = new java.util.Random(42);
+        Integer[] values = new Integer[n];
+        for (int i = 0; i < n; ++i) { values[i] = i; }
+
+        for (int arity : new int[] {2, 4, 8}) {
+            // push-heavy: push everything, pop a tenth
+            BinaryPriorityQueue<Integer, Integer> pQueue = new BinaryPriorityQueue<>(arity);
+            long start = System.nanoTime();
+            for (Integer v : values) { pQueue.push(v, random.nextInt()); }
+            for (int i = 0; i < n/10; ++i) { pQueue.pop(); }
+            long pushHeavy = System.nanoTime() - start;
+
+            // pop-heavy: drain what is left
+            start = System.nanoTime();
+            while (!pQueue.isEmpty()) { pQueue.pop(); }
+            long popHeavy = System.nanoTime() - start;
+
+            // decrease-key-heavy: 4 decreases per value, then drain
+            pQueue = new BinaryPriorityQueue<>(arity);
+            for (Integer v : values) { pQueue.push(v, Integer.MAX_VALUE); }
+            start = System.nanoTime();
+            for (int i = 0; i < 4*n; ++i) {
+                Integer v = values[random.nextInt(n)];
+                int priority = pQueue.getPriority(v);
+                pQueue.push(v, priority - random.nextInt(1 << 20));
+            }
+            while (!pQueue.isEmpty()) { pQueue.pop(); }
+            long decreaseHeavy = System.nanoTime() - start;
+
+            System.out.println("arity=" + arity + " n=" + n
+                    + " push-heavy: " + pushHeavy/1000000 + "ms"
+                    + ", pop-heavy: " + popHeavy/1000000 + "ms"
+                    + ", decrease-key-heavy: " + decreaseHeavy/1000000 + "ms");
+        }
+    }
+
     public static void main(String[] args) {
         pushNewTest();
         pushExistedTest();
         popTest();
+        benchmark(args.length > 0 ? Integer.parseInt(args[0]) : 1000000);
     }
 }
@@ -0,0 +1,282 @@
+package decomplexified;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import decomplexified.util.WeightedValue;
+
+/**
+ * @author Alan
+ *  Thread-safe relaxed priority queue (a MultiQueue): the values are spread
+ *  over several BinaryPriorityQueues, each behind its own lock, so threads
+ *  rarely wait for each other.
+ *
+ *  A new value goes to a random queue, and a map from value to queue
+ *  lets a later push find it there to update its priority, as
+ *  BinaryPriorityQueue.push does. So where a value lives does not depend
+ *  on its priority or its hash code.
+ *
+ *  pop looks at the tops of two random queues and takes the smaller one.
+ *  So it does not always return the global minimum. With q queues the
+ *  returned value has an expected rank of O(q) among all values, and is
+ *  the minimum when q == 1; the bound relies on the random placement,
+ *  since small priorities clustered in one queue would be missed by
+ *  most samples. pop returns null only if every queue was found empty
+ *  while it scanned them in turn.
+ */
+public class ConcurrentMultiQueue<T, W extends Comparable<W>>
+        implements MinPriorityQueue<T,W> {
+    private final BinaryPriorityQueue<T,W>[] queues;
+    private final ReentrantLock[] locks;
+    // queue holding each value; an entry for queue k is only added or
+    // removed under lock k, together with the value itself
+    private final ConcurrentHashMap<T, Integer> home = new ConcurrentHashMap<>();
+
+    // tops.get(k) is the top priority of queue k, null if it is empty;
+    // updated under the lock but readable without it
+    private final AtomicReferenceArray<W> tops;
+    private final AtomicInteger size = new AtomicInteger();
+
+    // two queues per core is the usual choice
+    public ConcurrentMultiQueue() {
+        this(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ConcurrentMultiQueue(int queueCount) {
+        if (queueCount < 1) {
+            throw new IllegalArgumentException("need at least one queue: " + queueCount);
+        }
+        queues = new BinaryPriorityQueue[queueCount];
+        locks = new ReentrantLock[queueCount];
+        for (int k = 0; k < queueCount; ++k) {
+            queues[k] = new BinaryPriorityQueue<>();
+            locks[k] = new ReentrantLock();
+        }
+        tops = new AtomicReferenceArray<>(queueCount);
+    }
+
+    // trivial methods; size and isEmpty are only a snapshot
+    public int size() { return size.get(); }
+    public boolean isEmpty() { return size.get() == 0; }
+
+    public boolean contains(T value) {
+        return home.containsKey(value);
+    }
+
+    public W getPriority(T value) {
+        while (true) {
+            Integer k = home.get(value);
+            if (k == null) { return null; }
+            locks[k].lock();
+            try {
+                // unless it was popped meanwhile
+                if (queues[k].contains(value)) { return queues[k].getPriority(value); }
+            } finally {
+                locks[k].unlock();
+            }
+        }
+    }
+
+    public boolean push(T value, W priority) {
+        while (true) {
+            Integer owner = home.get(value);
+            boolean existed = owner != null;
+            int k = existed ? owner : ThreadLocalRandom.current().nextInt(queues.length);
+            locks[k].lock();
+            try {
+                // claim a new value for queue k, or check that an existing
+                // one is still in queue k; otherwise look again
+                if (existed ? queues[k].contains(value)
+                        : home.putIfAbsent(value, k) == null) {
+                    queues[k].push(value, priority);
+                    if (!existed) { size.incrementAndGet(); }
+                    updateTop(k);
+                    return existed;
+                }
+            } finally {
+                locks[k].unlock();
+            }
+        }
+    }
+
+    public WeightedValue<T,W> pop() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int n = queues.length;
+
+        // sample two queues and try the one with the smaller top; give
+        // up sampling after a few rounds of contention or empty queues
+        for (int attempt = 0; attempt < 4 * n; ++attempt) {
+            if (size.get() == 0) { return null; }
+            int i = random.nextInt(n);
+            int j = random.nextInt(n);
+            W ti = tops.get(i);
+            W tj = tops.get(j);
+            if (ti == null && tj == null) { continue; }
+            int k = tj == null || (ti != null && ti.compareTo(tj) <= 0) ? i : j;
+            if (!locks[k].tryLock()) { continue; }
+            try {
+                WeightedValue<T,W> top = popFrom(k);
+                if (top != null) { return top; }
+            } finally {
+                locks[k].unlock();
+            }
+        }
+
+        // the queue is almost empty or very contended: scan all queues
+        for (int k = 0; k < n; ++k) {
+            locks[k].lock();
+            try {
+                WeightedValue<T,W> top = popFrom(k);
+                if (top != null) { return top; }
+            } finally {
+                locks[k].unlock();
+            }
+        }
+        return null;
+    }
+
+    public void clear() {
+        // lock in index order so that concurrent clears cannot deadlock
+        for (ReentrantLock lock : locks) { lock.lock(); }
+        try {
+            for (int k = 0; k < queues.length; ++k) {
+                queues[k].clear();
+                tops.set(k, null);
+            }
+            home.clear();
+            size.set(0);
+        } finally {
+            for (ReentrantLock lock : locks) { lock.unlock(); }
+        }
+    }
+
+    // helper: pop from queue k; the caller holds its lock
+    private WeightedValue<T,W> popFrom(int k) {
+        WeightedValue<T,W> top = queues[k].pop();
+        if (top != null) {
+            home.remove(top.value);
+            size.decrementAndGet();
+            updateTop(k);
+        }
+        return top;
+    }
+
+    // helper: refresh the cached top of queue k; the caller holds its lock
+    private void updateTop(int k) {
+        BinaryPriorityQueue<T,W> q = queues[k];
+        tops.set(k, q.isEmpty() ? null : q.top().weight);
+    }
+
+/////////////////////////////////////////////////////////////////////
+
+    /**
+     * Each thread pushes random values and pops in turn. Compared against
+     * one BinaryPriorityQueue behind a global lock.
+     */
+    private static void benchmark(int threads, final int opsPerThread) throws InterruptedException {
+        final BinaryPriorityQueue<Integer, Integer> single = new BinaryPriorityQueue<>();
+        MinPriorityQueue<Integer, Integer> locked = new MinPriorityQueue<Integer, Integer>() {
+            public synchronized boolean push(Integer v, Integer w) { return single.push(v, w); }
+            public synchronized WeightedValue<Integer, Integer> pop() { return single.pop(); }
+            public synchronized Integer getPriority(Integer v) { return single.getPriority(v); }
+            public synchronized boolean contains(Integer v) { return single.contains(v); }
+            public synchronized int size() { return single.size(); }
+            public synchronized boolean isEmpty() { return single.isEmpty(); }
+            public synchronized void clear() { single.clear(); }
+        };
+        ConcurrentMultiQueue<Integer, Integer> multi = new ConcurrentMultiQueue<>(2 * threads);
+
+        for (int round = 0; round < 2; ++round) {
+            long t1 = run(locked, threads, opsPerThread);
+            long t2 = run(multi, threads, opsPerThread);
+            long ops = (long) threads * opsPerThread;
+            System.out.println("threads=" + threads
+                    + " locked BinaryPriorityQueue: " + ops * 1000 / Math.max(t1, 1) + " ops/ms"
+                    + ", ConcurrentMultiQueue: " + ops * 1000 / Math.max(t2, 1) + " ops/ms");
+        }
+    }
+
+    // returns elapsed microseconds
+    private static long run(final MinPriorityQueue<Integer, Integer> q, int threads,
+            final int opsPerThread) throws InterruptedException {
+        q.clear();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            workers[t] = new Thread() {
+                public void run() {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < opsPerThread; ++i) {
+                        if ((i & 1) == 0) {
+                            q.push(random.nextInt(1 << 20), random.nextInt());
+                        } else {
+                            q.pop();
+                        }
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) { worker.start(); }
+        for (Thread worker : workers) { worker.join(); }
+        return (System.nanoTime() - start) / 1000;
+    }
+
+    /**
+     * Mean rank of the popped values (0 = the true minimum), single
+     * threaded: n values with priorities 0..n-1 pushed in random order,
+     * then half of them popped. Ranks are counted with a Fenwick tree
+     * over the priorities still present.
+     */
+    private static void rankTest(int queueCount, int n) {
+        ConcurrentMultiQueue<Integer, Integer> q = new ConcurrentMultiQueue<>(queueCount);
+        int[] order = new int[n];
+        for (int i = 0; i < n; ++i) { order[i] = i; }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = n - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            int t = order[i]; order[i] = order[j]; order[j] = t;
+        }
+        int[] fenwick = new int[n + 1];
+        for (int p : order) {
+            q.push(p, p);
+            for (int i = p + 1; i <= n; i += i & -i) { ++fenwick[i]; }
+        }
+        long rankSum = 0;
+        for (int k = 0; k < n / 2; ++k) {
+            int p = q.pop().weight;
+            for (int i = p; i > 0; i -= i & -i) { rankSum += fenwick[i]; }
+            for (int i = p + 1; i <= n; i += i & -i) { --fenwick[i]; }
+        }
+        System.out.println(queueCount + " queues: mean rank of popped values "
+                + (double) rankSum / (n / 2));
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ConcurrentMultiQueue<String, Integer> pQueue = new ConcurrentMultiQueue<>(1);
+        String[] values = {"1","5","3","7a","7b","4","6","8a","8b","8c"};
+        Integer[] priorities = {1, 5, 3, 7, 7, 4, 6, 8, 8, 8};
+        for (int i = 0; i < values.length; ++i) {
+            pQueue.push(values[i], priorities[i]);
+        }
+        pQueue.push("8c", 2);
+        System.out.println("reset 8c with priority 2");
+        StringBuffer popped = new StringBuffer();
+        while (!pQueue.isEmpty()) {
+            popped.append(pQueue.pop() + " ");
+        }
+        System.out.println("popped in order (one queue, exact):");
+        System.out.println(popped);
+        for (int queueCount : new int[] {1, 4, 16, 64}) {
+            rankTest(queueCount, 100000);
+        }
+
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+                : Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            benchmark(threads, 1000000);
+        }
+    }
+}
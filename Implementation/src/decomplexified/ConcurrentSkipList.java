@@ -0,0 +1,304 @@
+package decomplexified;
+
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Alan
+ *  Lock-free ordered set with the find/insert/delete semantics of
+ *  AVLTree, shared by any number of threads without a lock.
+ *
+ *  A skiplist is a sorted linked list (level 0) with sparser express
+ *  lists on top: a node is also on levels 1..k with probability 2^-k, so
+ *  a search goes right and down through O(log n) nodes, like a search
+ *  in a balanced BST. Unlike tree rotations, adding or removing a node
+ *  only changes the next pointer of its predecessor on each level, and
+ *  each such change is a single compare-and-set.
+ *
+ *  A next pointer can be marked, by wrapping its target in a Marked.
+ *  delete first marks the victim's own next pointers, top-down, which
+ *  freezes them: no insert can link a node after a marked one. Marking
+ *  level 0 is the moment the value leaves the set. The marked node is
+ *  then unlinked by whichever insert or delete passes by next.
+ *
+ *  find never writes and never retries: it skips marked nodes rather
+ *  than unlinking them, so it finishes in a bounded number of steps
+ *  whatever the other threads do (wait-free). insert and delete are
+ *  lock-free: a failed compare-and-set means another thread made
+ *  progress.
+ */
+public class ConcurrentSkipList<T extends Comparable<T>> {
+    private static final int MAX_LEVEL = 32;
+
+    private static class Node<T> {
+        final T value;
+        // next.get(i) is the successor on level i: a Node, or a Marked
+        // wrapping it once this node is being deleted; null at the end
+        final AtomicReferenceArray<Object> next;
+
+        Node(T value, int levels) {
+            this.value = value;
+            next = new AtomicReferenceArray<>(levels);
+        }
+    }
+
+    // a marked link; allocated only by delete, so reads stay one hop
+    private static class Marked<T> {
+        final Node<T> node;
+
+        Marked(Node<T> node) { this.node = node; }
+    }
+
+    // sentinel on every level, before all values
+    private final Node<T> head = new Node<>(null, MAX_LEVEL);
+    // striped counter, so that writers do not all update one cache line
+    private final LongAdder size = new LongAdder();
+
+    // trivial methods; size and isEmpty are only a snapshot
+    public int size() { return size.intValue(); }
+    public boolean isEmpty() { return size.sum() == 0; }
+
+    /* find a value. Return the value in the set that equals the query,
+     * null if not found. Wait-free.
+     */
+    public T find(T query) {
+        Node<T> pred = head;
+        Node<T> curr = null;
+        for (int level = MAX_LEVEL - 1; level >= 0; --level) {
+            curr = nodeOf(pred.next.get(level));
+            while (curr != null) {
+                Object link = curr.next.get(level);
+                if (link instanceof Marked) {
+                    // being deleted: step over it
+                    curr = nodeOf(link);
+                } else if (curr.value.compareTo(query) < 0) {
+                    pred = curr;
+                    curr = nodeOf(link);
+                } else {
+                    break;
+                }
+            }
+        }
+        return curr != null && curr.value.compareTo(query) == 0 ? curr.value : null;
+    }
+
+    public boolean contains(T query) { return find(query) != null; }
+
+    /* insert a value. Return false if it was present already */
+    public boolean insert(T value) {
+        int levels = randomLevels();
+        // only the node's own levels are linked
+        Node<T>[] preds = newNodes(levels);
+        Node<T>[] succs = newNodes(levels);
+        Node<T> node = new Node<>(value, levels);
+        while (true) {
+            if (search(value, preds, succs)) { return false; }
+            // linking on level 0 adds the value to the set
+            node.next.set(0, succs[0]);
+            if (preds[0].next.compareAndSet(0, succs[0], node)) { break; }
+        }
+        size.increment();
+
+        // the express levels are only shortcuts; link them one by one
+        for (int level = 1; level < levels; ++level) {
+            while (true) {
+                Object next = node.next.get(level);
+                // already being deleted: do not link it any further
+                if (next instanceof Marked) { return true; }
+                if (next != succs[level] && !node.next.compareAndSet(level, next, succs[level])) {
+                    continue;
+                }
+                if (preds[level].next.compareAndSet(level, succs[level], node)) { break; }
+                // the neighborhood changed: look again
+                search(value, preds, succs);
+            }
+        }
+        return true;
+    }
+
+    /* delete a value. Return false if it was not found */
+    public boolean delete(T value) {
+        // only level 0 is needed: the unlinking search below finds the
+        // victim on its other levels by itself
+        Node<T>[] preds = newNodes(1);
+        Node<T>[] succs = newNodes(1);
+        if (!search(value, preds, succs)) { return false; }
+        Node<T> victim = succs[0];
+
+        // freeze the express levels, top-down
+        for (int level = victim.next.length() - 1; level >= 1; --level) {
+            Object next = victim.next.get(level);
+            while (!(next instanceof Marked)) {
+                victim.next.compareAndSet(level, next, new Marked<T>(nodeOf(next)));
+                next = victim.next.get(level);
+            }
+        }
+
+        // marking level 0 removes the value; only one thread wins this
+        while (true) {
+            Object next = victim.next.get(0);
+            if (next instanceof Marked) { return false; }
+            if (victim.next.compareAndSet(0, next, new Marked<T>(nodeOf(next)))) {
+                size.decrement();
+                // unlink it on every level
+                search(value, preds, succs);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * helper: fill preds[i] with the last node before value on level i
+     * and succs[i] with the node after it, for i < preds.length,
+     * unlinking the marked nodes met on the way on every level. Return
+     * whether succs[0] holds value.
+     */
+    private boolean search(T value, Node<T>[] preds, Node<T>[] succs) {
+        retry:
+        while (true) {
+            Node<T> pred = head;
+            for (int level = MAX_LEVEL - 1; level >= 0; --level) {
+                Object predLink = pred.next.get(level);
+                if (predLink instanceof Marked) { continue retry; }
+                Node<T> curr = nodeOf(predLink);
+                while (curr != null) {
+                    Object link = curr.next.get(level);
+                    Node<T> succ = nodeOf(link);
+                    if (link instanceof Marked) {
+                        // unlink curr; if pred changed meanwhile, start over
+                        if (!pred.next.compareAndSet(level, curr, succ)) { continue retry; }
+                        curr = succ;
+                    } else if (curr.value.compareTo(value) < 0) {
+                        pred = curr;
+                        curr = succ;
+                    } else {
+                        break;
+                    }
+                }
+                if (level < preds.length) {
+                    preds[level] = pred;
+                    succs[level] = curr;
+                }
+            }
+            return succs[0] != null && succs[0].value.compareTo(value) == 0;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> Node<T>[] newNodes(int n) {
+        return (Node<T>[]) new Node[n];
+    }
+
+    // helper: the node a link points to, marked or not
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T> nodeOf(Object link) {
+        return link instanceof Marked ? ((Marked<T>) link).node : (Node<T>) link;
+    }
+
+    // helper: 1 + number of coin flips before the first tail
+    private static int randomLevels() {
+        int bits = ThreadLocalRandom.current().nextInt() | (1 << (MAX_LEVEL - 1));
+        return Integer.numberOfTrailingZeros(bits) + 1;
+    }
+
+/////////////////////////////////////////////////////////////////////
+
+    // the operations benchmarked, over the three candidates
+    private interface IntSet {
+        boolean contains(int value);
+        boolean insert(int value);
+        boolean delete(int value);
+    }
+
+    /**
+     * Each thread runs random finds, inserts and deletes over 2^20 keys
+     * (half present at start), with the given percentage of finds; writes
+     * are half inserts, half deletes. Compared against an AVLTree behind a
+     * global lock and the JDK's ConcurrentSkipListSet.
+     */
+    private static void benchmark(int threads, int readPercent, int opsPerThread)
+            throws InterruptedException {
+        final AVLTree<Integer> tree = new AVLTree<>();
+        IntSet locked = new IntSet() {
+            public synchronized boolean contains(int v) { return tree.contains(v); }
+            public synchronized boolean insert(int v) { return tree.insert(v); }
+            public synchronized boolean delete(int v) { return tree.delete(v); }
+        };
+        final ConcurrentSkipList<Integer> list = new ConcurrentSkipList<>();
+        IntSet lockFree = new IntSet() {
+            public boolean contains(int v) { return list.contains(v); }
+            public boolean insert(int v) { return list.insert(v); }
+            public boolean delete(int v) { return list.delete(v); }
+        };
+        final ConcurrentSkipListSet<Integer> jdk = new ConcurrentSkipListSet<>();
+        IntSet jdkSet = new IntSet() {
+            public boolean contains(int v) { return jdk.contains(v); }
+            public boolean insert(int v) { return jdk.add(v); }
+            public boolean delete(int v) { return jdk.remove(v); }
+        };
+        IntSet[] sets = {locked, lockFree, jdkSet};
+        for (IntSet set : sets) {
+            for (int v = 0; v < 1 << 20; v += 2) { set.insert(v); }
+        }
+
+        for (int round = 0; round < 2; ++round) {
+            long t1 = run(locked, threads, readPercent, opsPerThread);
+            long t2 = run(lockFree, threads, readPercent, opsPerThread);
+            long t3 = run(jdkSet, threads, readPercent, opsPerThread);
+            long ops = (long) threads * opsPerThread;
+            System.out.println("threads=" + threads + ", " + readPercent + "% reads:"
+                    + " locked AVLTree " + ops * 1000 / Math.max(t1, 1) + " ops/ms"
+                    + ", ConcurrentSkipList " + ops * 1000 / Math.max(t2, 1) + " ops/ms"
+                    + ", ConcurrentSkipListSet " + ops * 1000 / Math.max(t3, 1) + " ops/ms");
+        }
+    }
+
+    // returns elapsed microseconds
+    private static long run(final IntSet set, int threads, final int readPercent,
+            final int opsPerThread) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            workers[t] = new Thread() {
+                public void run() {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < opsPerThread; ++i) {
+                        int value = random.nextInt(1 << 20);
+                        int op = random.nextInt(100);
+                        if (op < readPercent) {
+                            set.contains(value);
+                        } else if ((op & 1) == 0) {
+                            set.insert(value);
+                        } else {
+                            set.delete(value);
+                        }
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) { worker.start(); }
+        for (Thread worker : workers) { worker.join(); }
+        return (System.nanoTime() - start) / 1000;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ConcurrentSkipList<Integer> list = new ConcurrentSkipList<>();
+        for (int value = 1; value <= 15; ++value) { list.insert(value); }
+        System.out.println("After inserting 1 .. 15: size " + list.size());
+        System.out.println("insert 7 again --> " + list.insert(7));
+        System.out.println("find 7 --> " + list.find(7) + ", find 16 --> " + list.find(16));
+        for (int value = 1; value <= 10; ++value) { list.delete(value); }
+        System.out.println("After deleting 1 .. 10: size " + list.size());
+        System.out.println("delete 3 again --> " + list.delete(3));
+
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+                : Runtime.getRuntime().availableProcessors();
+        for (int readPercent : new int[] {95, 50}) {
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                benchmark(threads, readPercent, 1000000);
+            }
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package decomplexified;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import decomplexified.util.CSRGraph;
+import decomplexified.util.IntGraph;
+import decomplexified.util.MappedCSRGraph;
+import decomplexified.util.RandomGraphs;
+
+/**
+ * @author Alan
+ *  Contraction hierarchies: fast point-to-point distances after an offline
+ *  preprocessing step.
+ *
+ *  Preprocessing removes ("contracts") the vertices one at a time, least
+ *  important first. Whenever a shortest path ran through the removed
+ *  vertex, a shortcut edge with the same length is added between its
+ *  neighbors. The order a vertex was contracted in is its rank.
+ *
+ *  Every shortest path then has a version that first climbs to higher
+ *  ranks and then descends. A query runs two small Dijkstra searches
+ *  that only climb: one from the source over the upward edges, and one
+ *  from the sink over the downward edges reversed.
+ *
+ *  This pays off on graphs with a hierarchy, like road networks, where
+ *  long paths funnel through few important vertices. A plain grid has
+ *  none: the last vertices to go end up densely connected, and both
+ *  preprocessing and queries are much slower there.
+ */
+public class ContractionHierarchy {
+    // edges u -> w with rank[w] > rank[u], shortcuts included
+    private final IntGraph upward;
+    // edges u -> w with rank[u] > rank[w], stored reversed as w -> u
+    private final IntGraph downward;
+
+    // two searches per thread, so one index can serve concurrent queries
+    private final ThreadLocal<Dijkstra.Search[]> searches = new ThreadLocal<>();
+
+    private ContractionHierarchy(IntGraph up, IntGraph down) {
+        upward = up;
+        downward = down;
+    }
+
+    public int vertexCount() { return upward.vertexCount(); }
+    public int edgeCount() { return upward.edgeCount() + downward.edgeCount(); }
+
+    /**
+     * Contract a graph, e.g. a CSRGraph or MappedCSRGraph. Weights must
+     * be non-negative.
+     */
+    public static ContractionHierarchy build(IntGraph graph) {
+        return new Contractor(graph).contractAll();
+    }
+
+    // write the index as two graph files inside directory
+    public void save(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        MappedCSRGraph.write(upward, directory.resolve("upward.csr"));
+        MappedCSRGraph.write(downward, directory.resolve("downward.csr"));
+    }
+
+    // open an index written by save; the files are memory-mapped
+    public static ContractionHierarchy load(Path directory) throws IOException {
+        return new ContractionHierarchy(
+                MappedCSRGraph.open(directory.resolve("upward.csr")),
+                MappedCSRGraph.open(directory.resolve("downward.csr")));
+    }
+
+    /**
+     * Distance from source to sink. Both searches go on while their
+     * smallest tentative distance is below the best path found where
+     * they meet. Thread-safe: all state is per query.
+     * @return distance from source to sink; null if not reachable
+     */
+    public Double distance(int source, int sink) {
+        if (source == sink) { return 0.0; }
+        Dijkstra.Search forward = search(0);
+        Dijkstra.Search backward = search(1);
+        forward.relax(source, 0.0);
+        backward.relax(sink, 0.0);
+        double best = Double.POSITIVE_INFINITY;
+
+        while (true) {
+            boolean forwardOn = !forward.frontLine.isEmpty()
+                    && forward.frontLine.topPriority() < best;
+            boolean backwardOn = !backward.frontLine.isEmpty()
+                    && backward.frontLine.topPriority() < best;
+            if (!forwardOn && !backwardOn) { break; }
+            if (forwardOn) {
+                best = Math.min(best, settleNext(forward, backward, upward, downward));
+            }
+            if (backwardOn) {
+                best = Math.min(best, settleNext(backward, forward, downward, upward));
+            }
+        }
+        return best == Double.POSITIVE_INFINITY ? null : best;
+    }
+
+    /**
+     * helper: settle one vertex of current and relax its edges, unless
+     * it is stalled (stall-on-demand): if a higher vertex already reached
+     * has an edge of the other direction into it that gives a shorter
+     * distance, no shortest up-down path climbs through it, and its
+     * edges are skipped. This prunes most of the search space.
+     * @param edges the edges current climbs over
+     * @param stallEdges the edges of the other direction
+     * @return length of the path through that vertex if the other
+     *         search has reached it, infinity otherwise
+     */
+    private static double settleNext(Dijkstra.Search current, Dijkstra.Search other,
+            IntGraph edges, IntGraph stallEdges) {
+        double parentDist = current.frontLine.topPriority();
+        int parent = current.settleNext();
+        double through = other.isReached(parent)
+                ? parentDist + other.dist[parent] : Double.POSITIVE_INFINITY;
+        for (int e = stallEdges.firstEdge(parent); e < stallEdges.endEdge(parent); ++e) {
+            int higher = stallEdges.target(e);
+            if (current.isReached(higher)
+                    && current.dist[higher] + stallEdges.weight(e) < parentDist) {
+                return through;
+            }
+        }
+        for (int e = edges.firstEdge(parent); e < edges.endEdge(parent); ++e) {
+            current.relax(edges.target(e), parentDist + edges.weight(e));
+        }
+        return through;
+    }
+
+    private Dijkstra.Search search(int direction) {
+        Dijkstra.Search[] pair = searches.get();
+        if (pair == null) {
+            pair = new Dijkstra.Search[] {
+                    new Dijkstra.Search(vertexCount()), new Dijkstra.Search(vertexCount())};
+            searches.set(pair);
+        }
+        pair[direction].reset();
+        return pair[direction];
+    }
+
+    /**
+     * Preprocessing state: a mutable copy of the graph with in- and
+     * out-edge lists, to which shortcuts are added as vertices go. A
+     * contracted vertex is taken out of its neighbors' lists, and its
+     * edges, all to higher ranks by then, go straight to the index.
+     */
+    private static class Contractor {
+        // witness searches stop this many hops from their source, and
+        // after settling SETTLE_LIMIT vertices; a missed witness only
+        // costs an unneeded shortcut. Priorities are estimated with the
+        // shallower search.
+        private static final int ESTIMATE_HOPS = 2;
+        private static final int CONTRACT_HOPS = 6;
+        private static final int SETTLE_LIMIT = 500;
+
+        final int n;
+        int[][] outTo;
+        double[][] outWeight;
+        int[] outDegree;
+        int[][] inFrom;
+        double[][] inWeight;
+        int[] inDegree;
+
+        // number of neighbors contracted so far, to spread contraction
+        // evenly over the graph
+        int[] deletedNeighbors;
+        // 1 + the highest level of a contracted neighbor; contracting low
+        // levels first keeps the hierarchy, and so the queries, shallow
+        int[] level;
+
+        // witness search, with hop counts, so not a Dijkstra.Search
+        IndexedMinPQ frontLine;
+        double[] dist;
+        int[] hops;
+        int[] reached;   // dist[v] is valid iff reached[v] == stamp
+        int[] target;    // v is an out-neighbor yet to be settled iff target[v] == stamp
+        int stamp = 0;
+        // position of w in outTo[u] iff slotOf[w] == slotStamp, while
+        // the shortcuts from u are added
+        int[] slot;
+        int[] slotOf;
+        int slotStamp = 0;
+
+        CSRGraph.Builder up;
+        CSRGraph.Builder down;
+
+        Contractor(IntGraph graph) {
+            n = graph.vertexCount();
+            outTo = new int[n][];
+            outWeight = new double[n][];
+            outDegree = new int[n];
+            inFrom = new int[n][];
+            inWeight = new double[n][];
+            inDegree = new int[n];
+            for (int v = 0; v < n; ++v) {
+                outTo[v] = new int[Math.max(graph.degree(v), 2)];
+                outWeight[v] = new double[outTo[v].length];
+                inFrom[v] = new int[4];
+                inWeight[v] = new double[4];
+            }
+            slot = new int[n];
+            slotOf = new int[n];
+            for (int u = 0; u < n; ++u) {
+                ++slotStamp;
+                for (int e = graph.firstEdge(u); e < graph.endEdge(u); ++e) {
+                    int w = graph.target(e);
+                    if (w != u) { addEdge(u, w, graph.weight(e)); }
+                }
+            }
+            deletedNeighbors = new int[n];
+            level = new int[n];
+            frontLine = new IndexedMinPQ(n);
+            dist = new double[n];
+            hops = new int[n];
+            reached = new int[n];
+            target = new int[n];
+            up = new CSRGraph.Builder(n, graph.edgeCount());
+            down = new CSRGraph.Builder(n, graph.edgeCount());
+        }
+
+        ContractionHierarchy contractAll() {
+            // contract in order of priority; contracting a vertex only
+            // changes the priorities of its neighbors
+            IndexedMinPQ order = new IndexedMinPQ(n);
+            for (int v = 0; v < n; ++v) {
+                order.push(v, priority(v));
+            }
+            int[] neighbors = new int[16];
+            while (!order.isEmpty()) {
+                int v = order.pop();
+                int count = 0;
+                ++slotStamp;
+                for (int pass = 0; pass < 2; ++pass) {
+                    int degree = pass == 0 ? inDegree[v] : outDegree[v];
+                    int[] ends = pass == 0 ? inFrom[v] : outTo[v];
+                    for (int i = 0; i < degree; ++i) {
+                        // slotOf doubles as a seen-mark here
+                        if (slotOf[ends[i]] == slotStamp) { continue; }
+                        slotOf[ends[i]] = slotStamp;
+                        if (count == neighbors.length) { neighbors = Arrays.copyOf(neighbors, 2 * count); }
+                        neighbors[count++] = ends[i];
+                    }
+                }
+                contract(v, true);
+                for (int i = 0; i < count; ++i) {
+                    order.push(neighbors[i], priority(neighbors[i]));
+                }
+            }
+            return new ContractionHierarchy(up.build(), down.build());
+        }
+
+        // twice the shortcuts needed minus the edges removed, plus
+        // deleted neighbors and level
+        double priority(int v) {
+            int edgeDifference = contract(v, false) - inDegree[v] - outDegree[v];
+            return 2 * edgeDifference + deletedNeighbors[v] + level[v];
+        }
+
+        /**
+         * Find the shortcuts that removing v needs: for each pair of
+         * neighbors u -> v -> w, unless a witness search from u that
+         * avoids v finds a path to w that is no longer.
+         * @param apply whether to add the shortcuts and remove v, or
+         *        only count them
+         * @return number of shortcuts
+         */
+        int contract(int v, boolean apply) {
+            double maxOut = 0;
+            for (int j = 0; j < outDegree[v]; ++j) {
+                maxOut = Math.max(maxOut, outWeight[v][j]);
+            }
+
+            int shortcuts = 0;
+            for (int i = 0; i < inDegree[v]; ++i) {
+                int u = inFrom[v][i];
+                double toV = inWeight[v][i];
+                searchWitness(u, v, toV + maxOut, apply ? CONTRACT_HOPS : ESTIMATE_HOPS);
+                if (apply) {
+                    ++slotStamp;
+                    for (int k = 0; k < outDegree[u]; ++k) {
+                        slot[outTo[u][k]] = k;
+                        slotOf[outTo[u][k]] = slotStamp;
+                    }
+                }
+                for (int j = 0; j < outDegree[v]; ++j) {
+                    int w = outTo[v][j];
+                    if (w == u) { continue; }
+                    double viaV = toV + outWeight[v][j];
+                    if (reached[w] == stamp && dist[w] <= viaV) { continue; }
+                    ++shortcuts;
+                    if (apply) { addEdge(u, w, viaV); }
+                }
+            }
+            if (apply) { remove(v); }
+            return shortcuts;
+        }
+
+        // helper: hand v's edges to the index and take v out of the graph
+        void remove(int v) {
+            for (int j = 0; j < outDegree[v]; ++j) {
+                int w = outTo[v][j];
+                up.addEdge(v, w, outWeight[v][j]);
+                inDegree[w] = removeFrom(inFrom[w], inWeight[w], inDegree[w], v);
+                ++deletedNeighbors[w];
+                level[w] = Math.max(level[w], level[v] + 1);
+            }
+            for (int i = 0; i < inDegree[v]; ++i) {
+                int u = inFrom[v][i];
+                down.addEdge(v, u, inWeight[v][i]);
+                outDegree[u] = removeFrom(outTo[u], outWeight[u], outDegree[u], v);
+                ++deletedNeighbors[u];
+                level[u] = Math.max(level[u], level[v] + 1);
+            }
+            outTo[v] = inFrom[v] = null;
+            outWeight[v] = inWeight[v] = null;
+            outDegree[v] = inDegree[v] = 0;
+        }
+
+        // helper: remove x from ends[0..degree) by moving the last one in
+        private static int removeFrom(int[] ends, double[] weights, int degree, int x) {
+            for (int i = 0; i < degree; ++i) {
+                if (ends[i] != x) { continue; }
+                ends[i] = ends[degree - 1];
+                weights[i] = weights[degree - 1];
+                return degree - 1;
+            }
+            return degree;
+        }
+
+        /**
+         * Dijkstra from u over the remaining vertices other than v, up to
+         * a distance bound and a number of hops. Stops early once every
+         * out-neighbor of v has been settled.
+         */
+        void searchWitness(int u, int v, double bound, int maxHops) {
+            frontLine.clear();
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(reached, 0);
+                Arrays.fill(target, 0);
+                stamp = 1;
+            }
+            int targets = 0;
+            for (int j = 0; j < outDegree[v]; ++j) {
+                target[outTo[v][j]] = stamp;
+                ++targets;
+            }
+            dist[u] = 0.0;
+            hops[u] = 0;
+            reached[u] = stamp;
+            frontLine.push(u, 0.0);
+            int settled = 0;
+            while (!frontLine.isEmpty() && settled < SETTLE_LIMIT && targets > 0) {
+                double parentDist = frontLine.topPriority();
+                if (parentDist > bound) { break; }
+                int parent = frontLine.pop();
+                ++settled;
+                if (target[parent] == stamp) {
+                    target[parent] = 0;
+                    --targets;
+                }
+                if (hops[parent] == maxHops) { continue; }
+                for (int i = 0; i < outDegree[parent]; ++i) {
+                    int child = outTo[parent][i];
+                    if (child == v) { continue; }
+                    double d = parentDist + outWeight[parent][i];
+                    if (reached[child] != stamp || d < dist[child]) {
+                        dist[child] = d;
+                        hops[child] = hops[parent] + 1;
+                        reached[child] = stamp;
+                        frontLine.push(child, d);
+                    }
+                }
+            }
+        }
+
+        /**
+         * add u -> w, or shorten it if there is one already; slot must
+         * hold the positions of u's out-edges
+         */
+        void addEdge(int u, int w, double weight) {
+            if (slotOf[w] == slotStamp) {
+                int i = slot[w];
+                if (weight < outWeight[u][i]) {
+                    outWeight[u][i] = weight;
+                    for (int j = 0; j < inDegree[w]; ++j) {
+                        if (inFrom[w][j] == u) { inWeight[w][j] = weight; }
+                    }
+                }
+                return;
+            }
+            if (outDegree[u] == outTo[u].length) {
+                outTo[u] = Arrays.copyOf(outTo[u], 2 * outDegree[u]);
+                outWeight[u] = Arrays.copyOf(outWeight[u], 2 * outDegree[u]);
+            }
+            slot[w] = outDegree[u];
+            slotOf[w] = slotStamp;
+            outTo[u][outDegree[u]] = w;
+            outWeight[u][outDegree[u]++] = weight;
+            if (inDegree[w] == inFrom[w].length) {
+                inFrom[w] = Arrays.copyOf(inFrom[w], 2 * inDegree[w]);
+                inWeight[w] = Arrays.copyOf(inWeight[w], 2 * inDegree[w]);
+            }
+            inFrom[w][inDegree[w]] = u;
+            inWeight[w][inDegree[w]++] = weight;
+        }
+    }
+
+/////////////////////////////////////////////////////////////////////
+
+    private static String percentiles(long[] nanos) {
+        Arrays.sort(nanos);
+        int q = nanos.length;
+        return "p50 " + nanos[q / 2] / 1000 + "us, p90 " + nanos[q * 9 / 10] / 1000
+                + "us, p99 " + nanos[q * 99 / 100] / 1000 + "us, max " + nanos[q - 1] / 1000 + "us";
+    }
+
+    /**
+     * Preprocess a road-like grid (RandomGraphs.roadGrid) and compare
+     * query latency with plain Dijkstra, which is timed on the first 100
+     * queries only; pass the grid side as first argument.
+     */
+    public static void main(String[] args) throws IOException {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        CSRGraph graph = CSRGraph.buildGraph(side * side,
+                RandomGraphs.roadGrid(side, side, 10, new Random(42)));
+
+        long start = System.nanoTime();
+        ContractionHierarchy ch = build(graph);
+        System.out.println(graph.vertexCount() + " vertices, " + graph.edgeCount()
+                + " edges; contracted in " + (System.nanoTime() - start) / 1000000 + "ms, "
+                + ch.edgeCount() + " edges with shortcuts");
+
+        Path directory = Files.createTempDirectory("ch");
+        ch.save(directory);
+        start = System.nanoTime();
+        ContractionHierarchy loaded = load(directory);
+        System.out.println("saved and loaded in " + (System.nanoTime() - start) / 1000 + "us");
+
+        Random random = new Random(7);
+        int queries = 10000;
+        int[] sources = new int[queries];
+        int[] sinks = new int[queries];
+        for (int q = 0; q < queries; ++q) {
+            sources[q] = random.nextInt(graph.vertexCount());
+            sinks[q] = random.nextInt(graph.vertexCount());
+        }
+        // the second round is timed, once the JIT is done
+        Double[] distances = new Double[queries];
+        long[] chNanos = new long[queries];
+        for (int round = 0; round < 2; ++round) {
+            for (int q = 0; q < queries; ++q) {
+                start = System.nanoTime();
+                distances[q] = loaded.distance(sources[q], sinks[q]);
+                chNanos[q] = System.nanoTime() - start;
+            }
+        }
+
+        Dijkstra<Integer> dijkstra = new Dijkstra<>();
+        long[] dijkstraNanos = new long[Math.min(queries, 100)];
+        int mismatches = 0;
+        for (int q = 0; q < dijkstraNanos.length; ++q) {
+            start = System.nanoTime();
+            Double d = dijkstra.traverse(graph, sources[q], sinks[q]);
+            dijkstraNanos[q] = System.nanoTime() - start;
+            if (d == null ? distances[q] != null : !d.equals(distances[q])) { ++mismatches; }
+        }
+        System.out.println("contraction hierarchy: " + percentiles(chNanos));
+        System.out.println("Dijkstra:              " + percentiles(dijkstraNanos));
+        System.out.println(mismatches + " mismatches in " + dijkstraNanos.length + " queries");
+
+        for (Path file : new Path[] {directory.resolve("upward.csr"), directory.resolve("downward.csr")}) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+}
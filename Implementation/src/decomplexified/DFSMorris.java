@@ -0,0 +1,223 @@
+package decomplexified;
+
+import java.util.ArrayList;
+
+import decomplexified.util.Allocations;
+import decomplexified.util.RandomGraphs;
+import decomplexified.util.TreeNode;
+import decomplexified.util.TreeNode2;
+
+/**
+ * @author Alan
+ *  Morris traversal: DFS with O(1) extra space on a TreeNode, which has
+ *  no parent pointers.
+ *
+ *  The way back up is stored in the tree itself: before going down to
+ *  the left subtree of a node, the right pointer of its in-order
+ *  predecessor (the rightmost node of that subtree), which is null, is
+ *  pointed at the node. Meeting that "thread" again later means the
+ *  left subtree is done; the thread is then removed. When traverse
+ *  returns the tree is as before.
+ *
+ *  Because the tree is modified while the traversal runs, it must not be
+ *  read by other threads at the same time, process must not follow left
+ *  or right pointers, and the traversal cannot be paused. With parent
+ *  pointers (TreeNode2) DFSO1Space walks in O(1) space without modifying
+ *  anything, and can be paused through its iterator.
+ */
+public class DFSMorris<T> {
+    // action to be performed for a visited node.
+    protected void process(TreeNode<T> node) {
+        // As an example we simply print out the node
+        System.out.println(node);
+    }
+
+    // Traversal orders
+    public static enum DFSOrder {
+        PRE_ORDER, IN_ORDER, POST_ORDER
+    }
+
+    public void traverse(TreeNode<T> root, DFSOrder order) {
+        if (root == null) { return; }
+        if (order == DFSOrder.POST_ORDER) {
+            postOrder(root);
+            return;
+        }
+
+        TreeNode<T> currentNode = root;
+        while (currentNode != null) {
+            if (currentNode.left == null) {
+                process(currentNode);
+                currentNode = currentNode.right;
+                continue;
+            }
+            TreeNode<T> predecessor = predecessor(currentNode);
+            if (predecessor.right == null) {
+                // first time here: leave a thread back and go left
+                if (order == DFSOrder.PRE_ORDER) { process(currentNode); }
+                predecessor.right = currentNode;
+                currentNode = currentNode.left;
+            } else {
+                // came back through the thread: left subtree done
+                predecessor.right = null;
+                if (order == DFSOrder.IN_ORDER) { process(currentNode); }
+                currentNode = currentNode.right;
+            }
+        }
+    }
+
+    /**
+     * helper: post-order. Same walk as in-order below a dummy node whose
+     * left child is root. When a node's left subtree is done, the path
+     * from its left child down the right pointers to the predecessor is
+     * exactly the part of the post-order not yet processed; it is
+     * processed bottom-up by reversing its right pointers, and reversed
+     * back afterwards.
+     */
+    private void postOrder(TreeNode<T> root) {
+        TreeNode<T> dummy = new TreeNode<>(null);
+        dummy.left = root;
+        TreeNode<T> currentNode = dummy;
+        while (currentNode != null) {
+            if (currentNode.left == null) {
+                currentNode = currentNode.right;
+                continue;
+            }
+            TreeNode<T> predecessor = predecessor(currentNode);
+            if (predecessor.right == null) {
+                predecessor.right = currentNode;
+                currentNode = currentNode.left;
+            } else {
+                reverseRightPath(currentNode.left, predecessor);
+                for (TreeNode<T> node = predecessor; ; node = node.right) {
+                    process(node);
+                    if (node == currentNode.left) { break; }
+                }
+                reverseRightPath(predecessor, currentNode.left);
+                // the reversals leave predecessor.right behind; it was the
+                // thread anyway
+                predecessor.right = null;
+                currentNode = currentNode.right;
+            }
+        }
+    }
+
+    // helper: rightmost node of the left subtree, or the node whose
+    // thread already points back to node
+    private TreeNode<T> predecessor(TreeNode<T> node) {
+        TreeNode<T> predecessor = node.left;
+        while (predecessor.right != null && predecessor.right != node) {
+            predecessor = predecessor.right;
+        }
+        return predecessor;
+    }
+
+    // helper: reverse the right pointers on the path from -> ... -> to;
+    // from.right is left as it was
+    private void reverseRightPath(TreeNode<T> from, TreeNode<T> to) {
+        if (from == to) { return; }
+        TreeNode<T> previous = from;
+        TreeNode<T> node = from.right;
+        while (previous != to) {
+            TreeNode<T> next = node.right;
+            node.right = previous;
+            previous = node;
+            node = next;
+        }
+    }
+
+/////////////////////////////////////////////////////////////////////
+
+    /**
+     * Time and heap allocation of a traversal of a large tree with an
+     * explicit stack (DFSStack), parent pointers (DFSO1Space) and
+     * threads (Morris); pass the node count as first argument.
+     */
+    private static void benchmark(int n) {
+        Integer[] values = new Integer[n];
+        for (int i = 0; i < n; ++i) { values[i] = i; }
+        for (int shape = 0; shape < 2; ++shape) {
+            Integer[][] families = shape == 0
+                    ? RandomGraphs.completeBinaryTree(n) : RandomGraphs.pathTree(n);
+            String name = shape == 0 ? "balanced" : "path";
+            TreeNode<Integer> root = TreeNode.buildTree(values, families).get(0);
+            TreeNode2<Integer> root2 = TreeNode2.buildTree(values, families).get(0);
+
+            final long[] sum = new long[1];
+            DFSStack<Integer> stack = new DFSStack<Integer>() {
+                protected void process(TreeNode<Integer> node) { sum[0] += node.value; }
+            };
+            DFSO1Space<Integer> parents = new DFSO1Space<Integer>() {
+                protected void process(TreeNode2<Integer> node) { sum[0] += node.value; }
+            };
+            DFSMorris<Integer> morris = new DFSMorris<Integer>() {
+                protected void process(TreeNode<Integer> node) { sum[0] += node.value; }
+            };
+            // a fresh DFSStack per round, so that its stack is counted
+            for (int round = 0; round < 3; ++round) {
+                long bytes = Allocations.allocatedBytes();
+                long start = System.nanoTime();
+                stack.traverse(root, DFSStack.DFSOrder.IN_ORDER);
+                long stackTime = System.nanoTime() - start;
+                long stackBytes = Allocations.allocatedBytes() - bytes;
+                stack = new DFSStack<Integer>() {
+                    protected void process(TreeNode<Integer> node) { sum[0] += node.value; }
+                };
+
+                bytes = Allocations.allocatedBytes();
+                start = System.nanoTime();
+                parents.traverse(root2, DFSO1Space.DFSOrder.IN_ORDER);
+                long parentsTime = System.nanoTime() - start;
+                long parentsBytes = Allocations.allocatedBytes() - bytes;
+
+                bytes = Allocations.allocatedBytes();
+                start = System.nanoTime();
+                morris.traverse(root, DFSOrder.IN_ORDER);
+                long morrisTime = System.nanoTime() - start;
+                long morrisBytes = Allocations.allocatedBytes() - bytes;
+
+                System.out.println(name + ", " + n + " nodes, in-order: stack "
+                        + stackTime / 1000000 + "ms " + stackBytes + " bytes, parent pointers "
+                        + parentsTime / 1000000 + "ms " + parentsBytes + " bytes, Morris "
+                        + morrisTime / 1000000 + "ms " + morrisBytes + " bytes");
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        String[] values = {"A","B","C","D","E","F","G","H","I","J"};
+        Integer[][] family = {{0,1,2},{1,3,4},{2,5,6},{4,7,8},{6,9,null}};
+        DFSMorris<String> dfs = new DFSMorris<>();
+
+        ArrayList<TreeNode<String>> nodes = TreeNode.buildTree(values, family);
+        TreeNode<String> root = nodes.get(0);
+
+        /*
+                   A
+                /      \
+               B        C
+             /   \     /  \
+            D     E   F    G
+                 / \      /
+                H   I    J
+        */
+        System.out.println("-------------------");
+        System.out.println("Pre-order:");
+        dfs.traverse(root, DFSOrder.PRE_ORDER);
+
+        System.out.println("-------------------");
+        System.out.println("In-order:");
+        dfs.traverse(root, DFSOrder.IN_ORDER);
+
+        System.out.println("-------------------");
+        System.out.println("Post-order:");
+        dfs.traverse(root, DFSOrder.POST_ORDER);
+
+        System.out.println("-------------------");
+        System.out.println("The tree afterwards:");
+        root.print(true);
+
+        System.out.println("-------------------");
+        benchmark(args.length > 0 ? Integer.parseInt(args[0]) : 1000000);
+    }
+}
@@ -1,6 +1,13 @@
 package decomplexified;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import decomplexified.util.TreeNode2;
 
 /**
@@ -58,7 +65,8 @@ public class DFSO1Space<T> {
                 /* fall through to next case */
             case RIGHT:
                 if (order == DFSOrder.POST_ORDER) { process(currentNode); }
-                TreeNode2<T> parentNode = currentNode.parent;
+                // root may be inside a larger tree: do not climb past it
+                TreeNode2<T> parentNode = currentNode == root ? null : currentNode.parent;
                 if (parentNode != null) {
                     direction = parentNode.left == currentNode ?
                             ComeFrom.LEFT : ComeFrom.RIGHT;
@@ -68,6 +76,77 @@ public class DFSO1Space<T> {
         }
     }
 //end{dfs}
+
+    /**
+     * The nodes in the order traverse(root, order) processes them,
+     * computed on demand: each next() resumes the loop of traverse where
+     * the previous one stopped. Like traverse it keeps O(1) state, only a
+     * node and a direction, and never modifies the tree.
+     */
+    public Iterator<TreeNode2<T>> iterator(final TreeNode2<T> root, final DFSOrder order) {
+        return new Iterator<TreeNode2<T>>() {
+            private TreeNode2<T> currentNode = root;
+            private ComeFrom direction = ComeFrom.PARENT;
+            // the node to return next; null if not looked for yet
+            private TreeNode2<T> nextNode = null;
+
+            public boolean hasNext() {
+                if (nextNode == null) { nextNode = advance(); }
+                return nextNode != null;
+            }
+
+            public TreeNode2<T> next() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+                TreeNode2<T> node = nextNode;
+                nextNode = null;
+                return node;
+            }
+
+            // the loop of traverse, but the state after each node to be
+            // processed is saved before returning it
+            private TreeNode2<T> advance() {
+                while (currentNode != null) {
+                    TreeNode2<T> node = currentNode;
+                    switch (direction) {
+                    case PARENT:
+                        if (node.left != null) {
+                            currentNode = node.left;
+                        } else {
+                            direction = ComeFrom.LEFT;
+                        }
+                        if (order == DFSOrder.PRE_ORDER) { return node; }
+                        break;
+                    case LEFT:
+                        if (node.right != null) {
+                            currentNode = node.right;
+                            direction = ComeFrom.PARENT;
+                        } else {
+                            direction = ComeFrom.RIGHT;
+                        }
+                        if (order == DFSOrder.IN_ORDER) { return node; }
+                        break;
+                    case RIGHT:
+                        // stop at root, as traverse does
+                        TreeNode2<T> parentNode = node == root ? null : node.parent;
+                        if (parentNode != null) {
+                            direction = parentNode.left == node ?
+                                    ComeFrom.LEFT : ComeFrom.RIGHT;
+                        }
+                        currentNode = parentNode;
+                        if (order == DFSOrder.POST_ORDER) { return node; }
+                        break;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    // iterator(root, order) as a sequential stream
+    public Stream<TreeNode2<T>> stream(TreeNode2<T> root, DFSOrder order) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(root, order),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
     
     public static void main(String[] args) {
         String[] values = {"A","B","C","D","E","F","G","H","I","J"};
@@ -98,6 +177,11 @@ public class DFSO1Space<T> {
         System.out.println("Post-roder:");
         dfs.traverse(root, DFSOrder.POST_ORDER);
 
+        System.out.println("-------------------");
+        System.out.println("In-order of the subtree at B:");
+        dfs.traverse(nodes.get(1), DFSOrder.IN_ORDER);
+        System.out.println("In-order of the subtree at B, streamed: " + dfs.stream(nodes.get(1), DFSOrder.IN_ORDER)
+                .collect(Collectors.toList()));
 }
 
 }
@@ -1,7 +1,12 @@
 package decomplexified;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import decomplexified.util.RandomGraphs;
 import decomplexified.util.TreeNode;
 
 /**
@@ -38,7 +43,133 @@ public class DFSRecursion<T> {
         if (order == DFSOrder.POST_ORDER) { process(root); }
     }
 //end{dfs}
+
+    // stack of traverseIterative, kept to be reused by the next call
+    private TreeNode<T>[] stack = TreeNode.newArray(16);
+
+    /**
+     * Same as traverse(root, order) with the recursion replaced by an
+     * explicit stack of pooled frames: the depth of the tree is only
+     * bounded by the heap, not by the thread stack, and repeat calls
+     * allocate nothing. A frame is just a node; each order has its own
+     * loop that decides from the tree itself where to go next.
+     */
+    public void traverseIterative(TreeNode<T> root, DFSOrder order) {
+        int deepest;
+        switch (order) {
+        case PRE_ORDER:  deepest = preOrder(root); break;
+        case IN_ORDER:   deepest = inOrder(root); break;
+        default:         deepest = postOrder(root); break;
+        }
+        // clear the used slots, or the stack would pin this tree in memory
+        Arrays.fill(stack, 0, deepest, null);
+    }
+
+    // helpers of traverseIterative; each returns the largest stack size
+
+    // process a node, remember its right child for later, go left
+    private int preOrder(TreeNode<T> node) {
+        int top = 0;
+        int deepest = 0;
+        while (node != null || top > 0) {
+            if (node == null) { node = stack[--top]; }
+            process(node);
+            if (node.right != null) {
+                push(top++, node.right);
+                deepest = Math.max(deepest, top);
+            }
+            node = node.left;
+        }
+        return deepest;
+    }
+
+    // go left as far as possible, then process and turn right
+    private int inOrder(TreeNode<T> node) {
+        int top = 0;
+        int deepest = 0;
+        while (node != null || top > 0) {
+            while (node != null) {
+                push(top++, node);
+                node = node.left;
+            }
+            deepest = Math.max(deepest, top);
+            node = stack[--top];
+            process(node);
+            node = node.right;
+        }
+        return deepest;
+    }
+
+    // like inOrder, but a node is processed when we come back from its
+    // right subtree, which is when its right child was processed last
+    private int postOrder(TreeNode<T> node) {
+        int top = 0;
+        int deepest = 0;
+        TreeNode<T> last = null;
+        while (node != null || top > 0) {
+            while (node != null) {
+                push(top++, node);
+                node = node.left;
+            }
+            deepest = Math.max(deepest, top);
+            TreeNode<T> topNode = stack[top - 1];
+            if (topNode.right != null && topNode.right != last) {
+                node = topNode.right;
+            } else {
+                process(topNode);
+                last = topNode;
+                --top;
+            }
+        }
+        return deepest;
+    }
+
+    private void push(int top, TreeNode<T> node) {
+        if (top == stack.length) { stack = Arrays.copyOf(stack, 2 * top); }
+        stack[top] = node;
+    }
+
+    /**
+     * The nodes in the order traverse(root, order) processes them,
+     * computed on demand. A recursion cannot be paused, so this runs the
+     * equivalent explicit-stack loop of DFSStack.
+     */
+    public Iterator<TreeNode<T>> iterator(TreeNode<T> root, DFSOrder order) {
+        return new DFSStack<T>().iterator(root, DFSStack.DFSOrder.valueOf(order.name()));
+    }
+
+    // iterator(root, order) as a sequential stream
+    public Stream<TreeNode<T>> stream(TreeNode<T> root, DFSOrder order) {
+        return new DFSStack<T>().stream(root, DFSStack.DFSOrder.valueOf(order.name()));
+    }
     
+    // count calls of process, as cheap work that cannot be optimized away
+    private static class Counter<T> extends DFSRecursion<T> {
+        long count = 0;
+        protected void process(TreeNode<T> node) { ++count; }
+    }
+
+    private static void benchmark(String name, TreeNode<Integer> root, int count) {
+        Counter<Integer> counter = new Counter<>();
+        for (int round = 0; round < 2; ++round) {
+            for (DFSOrder order : DFSOrder.values()) {
+                String recursive;
+                long start = System.nanoTime();
+                try {
+                    for (int k = 0; k < count; ++k) { counter.traverse(root, order); }
+                    recursive = (System.nanoTime() - start) / 1000000 + "ms";
+                } catch (StackOverflowError e) {
+                    recursive = "stack overflow";
+                }
+                start = System.nanoTime();
+                for (int k = 0; k < count; ++k) { counter.traverseIterative(root, order); }
+                long iterative = System.nanoTime() - start;
+                System.out.println(name + ", " + count + " x " + order + ": recursive "
+                        + recursive + ", iterative " + iterative / 1000000 + "ms");
+            }
+        }
+    }
+
     public static void main(String[] args) {
         String[] values = {"A","B","C","D","E","F","G","H","I","J"};
         Integer[][] family = {{0,1,2},{1,3,4},{2,5,6},{4,7,8},{6,9,null}};
@@ -67,6 +198,20 @@ public class DFSRecursion<T> {
         System.out.println("-------------------");
         System.out.println("Post-roder:");
         dfs.traverse(root, DFSOrder.POST_ORDER);
+
+        System.out.println("-------------------");
+        System.out.println("First 4 in post-order: " + dfs.stream(root, DFSOrder.POST_ORDER)
+                .limit(4).collect(Collectors.toList()));
+
+        // pass the node count as first argument
+        System.out.println("-------------------");
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        Integer[] manyValues = new Integer[n];
+        for (int i = 0; i < n; ++i) { manyValues[i] = i; }
+        benchmark("balanced, " + n + " nodes", TreeNode.buildTree(manyValues,
+                RandomGraphs.completeBinaryTree(n)).get(0), 20);
+        benchmark("path, " + n + " nodes", TreeNode.buildTree(manyValues,
+                RandomGraphs.pathTree(n)).get(0), 20);
 }
 
 }
@@ -1,8 +1,22 @@
 package decomplexified;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import decomplexified.util.Allocations;
+import decomplexified.util.CSRGraph;
+import decomplexified.util.IntGraph;
+import decomplexified.util.RandomGraphs;
 import decomplexified.util.TreeNode;
 
 /**
@@ -32,19 +46,21 @@ public class DFSStack<T> {
         PRE_ORDER, IN_ORDER, POST_ORDER
     }
     
+    // a stack for saving visited nodes. A node stays until all
+    // its descendants have been processed, even if itself has
+    // been processed
+    private ArrayDeque<TreeNode<T>> visited = new ArrayDeque<>();
+    
     public void traverse(TreeNode<T> root, DFSOrder order) {
         if (root == null) { return; }
         
-        // a stack for saving visited nodes. A node stays until all
-        // its descendants have been processed, even if itself has
-        // been processed
-        Stack<TreeNode<T>> visited = new Stack<>();
+        visited.clear();
         visited.push(root);
         
         // pretend we came to the root from parent null
         ComeFrom direction = ComeFrom.PARENT;
         
-        while (!visited.empty()) {
+        while (!visited.isEmpty()) {
             TreeNode<T> topNode = visited.peek();
             switch (direction) {
             case PARENT:
@@ -70,7 +86,7 @@ public class DFSStack<T> {
                 // have been processed, regardless of the traversal order
                 visited.pop();
                 
-                if (!visited.empty()) {
+                if (!visited.isEmpty()) {
                     direction = visited.peek().left == topNode ?
                             ComeFrom.LEFT : ComeFrom.RIGHT;
                 }
@@ -78,6 +94,180 @@ public class DFSStack<T> {
         }
     }
 //end{dfs}
+
+    /**
+     * The nodes in the order traverse(root, order) processes them,
+     * computed on demand: each next() resumes the loop of traverse where
+     * the previous one stopped. Stop calling next() to stop the traversal.
+     */
+    public Iterator<TreeNode<T>> iterator(final TreeNode<T> root, final DFSOrder order) {
+        return new Iterator<TreeNode<T>>() {
+            private ArrayDeque<TreeNode<T>> stack = new ArrayDeque<>();
+            private ComeFrom direction = ComeFrom.PARENT;
+            // the node to return next; null if not looked for yet
+            private TreeNode<T> nextNode = null;
+            {
+                if (root != null) { stack.push(root); }
+            }
+
+            public boolean hasNext() {
+                if (nextNode == null) { nextNode = advance(); }
+                return nextNode != null;
+            }
+
+            public TreeNode<T> next() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+                TreeNode<T> node = nextNode;
+                nextNode = null;
+                return node;
+            }
+
+            // the loop of traverse, but the state after each node to be
+            // processed is saved before returning it
+            private TreeNode<T> advance() {
+                while (!stack.isEmpty()) {
+                    TreeNode<T> topNode = stack.peek();
+                    switch (direction) {
+                    case PARENT:
+                        if (topNode.left != null) {
+                            stack.push(topNode.left);
+                        } else {
+                            direction = ComeFrom.LEFT;
+                        }
+                        if (order == DFSOrder.PRE_ORDER) { return topNode; }
+                        break;
+                    case LEFT:
+                        if (topNode.right != null) {
+                            stack.push(topNode.right);
+                            direction = ComeFrom.PARENT;
+                        } else {
+                            direction = ComeFrom.RIGHT;
+                        }
+                        if (order == DFSOrder.IN_ORDER) { return topNode; }
+                        break;
+                    case RIGHT:
+                        stack.pop();
+                        if (!stack.isEmpty()) {
+                            direction = stack.peek().left == topNode ?
+                                    ComeFrom.LEFT : ComeFrom.RIGHT;
+                        }
+                        if (order == DFSOrder.POST_ORDER) { return topNode; }
+                        break;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    // iterator(root, order) as a sequential stream
+    public Stream<TreeNode<T>> stream(TreeNode<T> root, DFSOrder order) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(root, order),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+    
+    // action to be performed for a visited vertex of an IntGraph
+    protected void process(IntGraph graph, int vertex) {
+        System.out.println(graph.familyToString(vertex));
+    }
+    
+    // stack and visited marks of traverse(IntGraph, int), kept to be
+    // reused by the next traversal
+    private int[] stackVertex = new int[0];
+    private int[] stackEdge = new int[0];
+    private BitSet visitedVertex = new BitSet();
+    
+    /**
+     * Pre-order DFS of an IntGraph from root. Each stack frame is a vertex
+     * and the next of its edges to look at, kept in two int arrays; a
+     * vertex is processed when it is pushed and never pushed twice.
+     */
+    public void traverse(IntGraph graph, int root) {
+        int n = graph.vertexCount();
+        if (stackVertex.length < n) {
+            stackVertex = new int[n];
+            stackEdge = new int[n];
+        }
+        visitedVertex.clear();
+        
+        process(graph, root);
+        visitedVertex.set(root);
+        stackVertex[0] = root;
+        stackEdge[0] = graph.firstEdge(root);
+        int top = 0;
+        
+        while (top >= 0) {
+            int vertex = stackVertex[top];
+            int e = stackEdge[top];
+            if (e == graph.endEdge(vertex)) {
+                // all children done
+                --top;
+                continue;
+            }
+            stackEdge[top] = e + 1;
+            int child = graph.target(e);
+            if (visitedVertex.get(child)) { continue; }
+            process(graph, child);
+            visitedVertex.set(child);
+            ++top;
+            stackVertex[top] = child;
+            stackEdge[top] = graph.firstEdge(child);
+        }
+    }
+    
+    /**
+     * The vertices in the order traverse(graph, root) processes them,
+     * computed on demand: a vertex's edges are only scanned as far as
+     * needed to find the next vertex. Each iterator has its own stack.
+     */
+    public PrimitiveIterator.OfInt iterator(final IntGraph graph, final int root) {
+        return new PrimitiveIterator.OfInt() {
+            private int[] stackVertex = new int[16];
+            private int[] stackEdge = new int[16];
+            private int top = -1;
+            private BitSet seen = new BitSet(graph.vertexCount());
+            private boolean rootReturned = false;
+
+            public boolean hasNext() {
+                if (!rootReturned) { return true; }
+                // pop finished frames until one has an unvisited child
+                while (top >= 0) {
+                    int vertex = stackVertex[top];
+                    while (stackEdge[top] < graph.endEdge(vertex)) {
+                        if (!seen.get(graph.target(stackEdge[top]))) { return true; }
+                        ++stackEdge[top];
+                    }
+                    --top;
+                }
+                return false;
+            }
+
+            public int nextInt() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+                int child;
+                if (!rootReturned) {
+                    rootReturned = true;
+                    child = root;
+                } else {
+                    child = graph.target(stackEdge[top]++);
+                }
+                seen.set(child);
+                if (++top == stackVertex.length) {
+                    stackVertex = Arrays.copyOf(stackVertex, 2 * top);
+                    stackEdge = Arrays.copyOf(stackEdge, 2 * top);
+                }
+                stackVertex[top] = child;
+                stackEdge[top] = graph.firstEdge(child);
+                return child;
+            }
+        };
+    }
+
+    // iterator(graph, root) as a sequential stream
+    public IntStream stream(IntGraph graph, int root) {
+        return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(iterator(graph, root),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
     
     public static void main(String[] args) {
         String[] values = {"A","B","C","D","E","F","G","H","I","J"};
@@ -108,6 +298,52 @@ public class DFSStack<T> {
         System.out.println("Post-roder:");
         dfs.traverse(root, DFSOrder.POST_ORDER);
 
-}
+        System.out.println("-------------------");
+        System.out.println("Pre-order on a graph:");
+        Integer[][] families = {{0,1,2},{1,0,3,4},{2,0,4,5,6},{3,1},{4,1,2},{5,2}, {6,2}};
+        CSRGraph graph = CSRGraph.buildGraph(7, families);
+        dfs.traverse(graph, 0);
+
+        System.out.println("-------------------");
+        System.out.print("In-order, pulled until E:");
+        for (Iterator<TreeNode<String>> it = dfs.iterator(root, DFSOrder.IN_ORDER); it.hasNext(); ) {
+            TreeNode<String> node = it.next();
+            System.out.print(" " + node);
+            if (node.value.equals("E")) { break; }
+        }
+        System.out.println();
+        System.out.println("Pre-order of the graph: "
+                + Arrays.toString(dfs.stream(graph, 0).toArray()));
+
+        // bytes allocated by a second traversal of a tree and a grid,
+        // 1000 nodes each unless a count is given as first argument
+        System.out.println("-------------------");
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        String[] treeValues = new String[n];
+        for (int i = 0; i < n; ++i) { treeValues[i] = Integer.toString(i); }
+        TreeNode<String> treeRoot =
+                TreeNode.buildTree(treeValues, RandomGraphs.completeBinaryTree(n)).get(0);
+        int side = (int) Math.sqrt(n);
+        CSRGraph grid = CSRGraph.buildGraph(side * side, RandomGraphs.grid(side, side));
+        DFSStack<String> silent = new DFSStack<String>() {
+            protected void process(TreeNode<String> node) {}
+            protected void process(IntGraph graph, int vertex) {}
+        };
+        for (int round = 0; round < 2; ++round) {
+            long start = System.nanoTime();
+            long bytes = Allocations.allocatedBytes();
+            silent.traverse(treeRoot, DFSOrder.IN_ORDER);
+            long treeTime = System.nanoTime() - start;
+            long treeBytes = Allocations.allocatedBytes() - bytes;
+            start = System.nanoTime();
+            bytes = Allocations.allocatedBytes();
+            silent.traverse(grid, 0);
+            long gridTime = System.nanoTime() - start;
+            long gridBytes = Allocations.allocatedBytes() - bytes;
+            System.out.println(n + " tree nodes: " + treeTime / 1000000 + "ms, "
+                    + treeBytes + " bytes allocated; " + grid.vertexCount() + " grid vertices: "
+                    + gridTime / 1000000 + "ms, " + gridBytes + " bytes allocated");
+        }
+    }
 
 }
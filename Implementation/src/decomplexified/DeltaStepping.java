@@ -0,0 +1,299 @@
+package decomplexified;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import decomplexified.util.CSRGraph;
+import decomplexified.util.IntGraph;
+import decomplexified.util.RandomGraphs;
+
+/**
+ * @author Alan
+ *  Delta-stepping: single-source shortest paths whose edge relaxations
+ *  run in parallel on a ForkJoinPool.
+ *
+ *  Tentative distances are grouped into buckets of width delta; bucket i
+ *  holds the vertices with distance in [i*delta, (i+1)*delta). The
+ *  smallest non-empty bucket is emptied in phases: all its vertices relax
+ *  their light edges (weight <= delta) in parallel, which may put
+ *  vertices back into the same bucket, until it stays empty. Then every
+ *  vertex taken out of it is final, and their heavy edges, which can only
+ *  reach later buckets, are relaxed in one more parallel phase.
+ *
+ *  delta trades work for parallelism: with delta = infinity it is
+ *  Bellman-Ford, with delta smaller than any weight it is Dijkstra.
+ *
+ *  A tentative distance is never more than the largest weight beyond
+ *  the current bucket, so only ceil(maxWeight/delta)+1 buckets are in use
+ *  at a time, and they are kept in a circular array. delta is raised to
+ *  at least maxWeight / MAX_BUCKETS to bound that array.
+ */
+public class DeltaStepping {
+    // below this many vertices a phase runs on the calling thread
+    private static final int LEAF = 256;
+    private static final int MAX_BUCKETS = 1 << 16;
+
+    private final ForkJoinPool pool;
+    // <= 0 means: choose per graph
+    private final double delta;
+
+    // bit patterns of the tentative distances; for non-negative doubles
+    // they order the same way as the values
+    private AtomicLongArray dist;
+
+    // vertex lists of the buckets, circular: bucket i is at i % length
+    private int[][] buckets = new int[0][];
+    private int[] bucketSizes = new int[0];
+    // entries in all buckets, stale ones included
+    private long pending;
+
+    // phase stamps to drop duplicate vertices from a frontier
+    private int[] seen;
+    private int stamp = 0;
+
+    /**
+     * delta is chosen per graph as max weight / average degree, the
+     * classic choice for random weights.
+     */
+    public DeltaStepping(ForkJoinPool pool) { this(pool, 0); }
+    public DeltaStepping(ForkJoinPool pool, double delta) {
+        this.pool = pool;
+        this.delta = delta;
+    }
+
+    /**
+     * Distances from source to every vertex. Weights must be non-negative.
+     * Not thread-safe: one call at a time per object; the parallelism is
+     * inside the call.
+     * @return result[v] is the distance to v, infinity if not reachable
+     */
+    public double[] traverse(IntGraph graph, int source) {
+        int n = graph.vertexCount();
+        double maxWeight = maxWeight(graph);
+        double width = delta > 0 ? delta : chooseDelta(graph, maxWeight);
+        width = Math.max(width, maxWeight / MAX_BUCKETS);
+        int bucketCount = (int) Math.ceil(maxWeight / width) + 1;
+        if (buckets.length != bucketCount) {
+            buckets = new int[bucketCount][];
+            bucketSizes = new int[bucketCount];
+        }
+        Arrays.fill(bucketSizes, 0);
+        pending = 0;
+        dist = new AtomicLongArray(n);
+        long infinity = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+        for (int v = 0; v < n; ++v) { dist.set(v, infinity); }
+        if (seen == null || seen.length < n) {
+            seen = new int[n];
+            stamp = 0;
+        }
+
+        dist.set(source, Double.doubleToRawLongBits(0.0));
+        addToBucket(0, source);
+
+        int[] settled = new int[16];
+        for (long i = 0; pending > 0; ++i) {
+            int slot = (int) (i % bucketCount);
+            int settledCount = 0;
+            while (bucketSizes[slot] > 0) {
+                // take the bucket's vertices that still belong to it
+                int[] frontier = takeBucket(i, width);
+                settled = grow(settled, settledCount + frontier.length);
+                System.arraycopy(frontier, 0, settled, settledCount, frontier.length);
+                settledCount += frontier.length;
+                relax(graph, frontier, frontier.length, width, true);
+            }
+            if (settledCount > 0) {
+                relax(graph, settled, settledCount, width, false);
+            }
+        }
+
+        double[] result = new double[n];
+        for (int v = 0; v < n; ++v) {
+            result[v] = Double.longBitsToDouble(dist.get(v));
+        }
+        dist = null;
+        return result;
+    }
+
+    // helper: one parallel phase; the improved vertices go to their buckets
+    private void relax(IntGraph graph, int[] vertices, int count, double width, boolean light) {
+        Phase phase = new Phase(graph, vertices, 0, count, width, light);
+        int[] improved = count <= LEAF ? phase.compute() : pool.invoke(phase);
+        for (int k = 1; k <= improved[0]; ++k) {
+            int v = improved[k];
+            addToBucket(bucketOf(v, width), v);
+        }
+    }
+
+    /**
+     * Relax the light or heavy edges of vertices[from..to), splitting the
+     * range in halves down to LEAF vertices. Distances are lowered with a
+     * compare-and-set loop, so threads never overwrite a smaller one.
+     * Returns the improved vertices as {count, v1, v2, ...}; a vertex may
+     * be listed more than once.
+     */
+    private class Phase extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+        final IntGraph graph;
+        final int[] vertices;
+        final int from, to;
+        final double width;
+        final boolean light;
+
+        Phase(IntGraph graph, int[] vertices, int from, int to, double width, boolean light) {
+            this.graph = graph;
+            this.vertices = vertices;
+            this.from = from;
+            this.to = to;
+            this.width = width;
+            this.light = light;
+        }
+
+        protected int[] compute() {
+            if (to - from > LEAF) {
+                int mid = (from + to) >>> 1;
+                Phase left = new Phase(graph, vertices, from, mid, width, light);
+                left.fork();
+                int[] right = new Phase(graph, vertices, mid, to, width, light).compute();
+                int[] both = left.join();
+                both = grow(both, both[0] + right[0] + 1);
+                System.arraycopy(right, 1, both, both[0] + 1, right[0]);
+                both[0] += right[0];
+                return both;
+            }
+
+            int[] improved = new int[16];
+            for (int k = from; k < to; ++k) {
+                int u = vertices[k];
+                double uDist = Double.longBitsToDouble(dist.get(u));
+                for (int e = graph.firstEdge(u); e < graph.endEdge(u); ++e) {
+                    double w = graph.weight(e);
+                    if ((w <= width) != light) { continue; }
+                    int v = graph.target(e);
+                    if (lower(v, uDist + w)) {
+                        improved = grow(improved, improved[0] + 2);
+                        improved[++improved[0]] = v;
+                    }
+                }
+            }
+            return improved;
+        }
+    }
+
+    // helper: set dist[v] to d if smaller; returns whether it was
+    private boolean lower(int v, double d) {
+        long bits = Double.doubleToRawLongBits(d);
+        while (true) {
+            long old = dist.get(v);
+            if (bits >= old) { return false; }
+            if (dist.compareAndSet(v, old, bits)) { return true; }
+        }
+    }
+
+    // index of v's bucket, not wrapped around
+    private long bucketOf(int v, double width) {
+        return (long) (Double.longBitsToDouble(dist.get(v)) / width);
+    }
+
+    private void addToBucket(long i, int v) {
+        int slot = (int) (i % buckets.length);
+        if (buckets[slot] == null) { buckets[slot] = new int[4]; }
+        int[] bucket = grow(buckets[slot], bucketSizes[slot] + 1);
+        buckets[slot] = bucket;
+        bucket[bucketSizes[slot]++] = v;
+        ++pending;
+    }
+
+    // helper: empty bucket i, dropping duplicates and vertices that have
+    // since moved to an earlier bucket, or were settled a cycle ago
+    private int[] takeBucket(long i, double width) {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(seen, 0);
+            stamp = 1;
+        }
+        int slot = (int) (i % buckets.length);
+        int[] bucket = buckets[slot];
+        int count = 0;
+        for (int k = 0; k < bucketSizes[slot]; ++k) {
+            int v = bucket[k];
+            if (seen[v] != stamp && bucketOf(v, width) == i) {
+                seen[v] = stamp;
+                bucket[count++] = v;
+            }
+        }
+        pending -= bucketSizes[slot];
+        bucketSizes[slot] = 0;
+        return Arrays.copyOf(bucket, count);
+    }
+
+    // largest finite weight; an infinite one never lowers a distance
+    private static double maxWeight(IntGraph graph) {
+        double maxWeight = 0;
+        for (int e = 0; e < graph.edgeCount(); ++e) {
+            double w = graph.weight(e);
+            if (w < Double.POSITIVE_INFINITY) { maxWeight = Math.max(maxWeight, w); }
+        }
+        return maxWeight;
+    }
+
+    private static double chooseDelta(IntGraph graph, double maxWeight) {
+        double degree = Math.max(1.0, (double) graph.edgeCount() / Math.max(graph.vertexCount(), 1));
+        return maxWeight > 0 ? maxWeight / degree : 1.0;
+    }
+
+    private static int[] grow(int[] a, int size) {
+        return size <= a.length ? a : Arrays.copyOf(a, Math.max(2 * a.length, size));
+    }
+
+/////////////////////////////////////////////////////////////////////
+
+    /**
+     * Check against Dijkstra and time full sweeps with 1, 2, 4, ... up to
+     * 64 threads (or the second argument); pass the grid side as first
+     * argument.
+     */
+    public static void main(String[] args) {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        Random random = new Random(42);
+        sweep("grid", CSRGraph.buildGraph(side * side,
+                RandomGraphs.grid(side, side, 100, random)), maxThreads);
+        sweep("scale-free", CSRGraph.buildGraph(side * side,
+                RandomGraphs.scaleFree(side * side, 4, 100, random)), maxThreads);
+    }
+
+    private static void sweep(String name, CSRGraph graph, int maxThreads) {
+        System.out.println(name + ": " + graph.vertexCount() + " vertices, "
+                + graph.edgeCount() + " edges, "
+                + Runtime.getRuntime().availableProcessors() + " cores");
+        // warm up the JIT so the first thread count is not penalized
+        ForkJoinPool warmUp = new ForkJoinPool(1);
+        new DeltaStepping(warmUp).traverse(graph, 0);
+        warmUp.shutdown();
+
+        int[] all = new int[graph.vertexCount()];
+        for (int v = 0; v < all.length; ++v) { all[v] = v; }
+        long start = System.nanoTime();
+        double[] expected = new Dijkstra<Integer>().traverse(graph, 0, all);
+        System.out.println("  Dijkstra: " + (System.nanoTime() - start) / 1000000 + "ms");
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            DeltaStepping solver = new DeltaStepping(pool);
+            long best = Long.MAX_VALUE;
+            double[] result = null;
+            for (int round = 0; round < 3; ++round) {
+                start = System.nanoTime();
+                result = solver.traverse(graph, 0);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            pool.shutdown();
+            System.out.println("  delta-stepping, " + threads + " threads: "
+                    + best / 1000000 + "ms"
+                    + (Arrays.equals(result, expected) ? "" : " MISMATCH"));
+        }
+    }
+}
@@ -1,9 +1,17 @@
 package decomplexified;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 
+import decomplexified.util.CSRGraph;
+import decomplexified.util.IntGraph;
+import decomplexified.util.MappedCSRGraph;
 import decomplexified.util.GraphNode2;
+import decomplexified.util.RandomGraphs;
 import decomplexified.util.WeightedValue;
 
 /**
@@ -14,13 +22,16 @@ public class Dijkstra<T> {
 //begin{dijkstra-traverse}
     // a priority queue to remember nodes which have been visited
     // but their distances are tentative
-    private BinaryPriorityQueue<GraphNode2<T>, Double> frontLine =
-            new BinaryPriorityQueue<>();
+    private MinPriorityQueue<GraphNode2<T>, Double> frontLine;
     
     // set used to mark if a node which has a finalized distance, that is,
     // a node which entered the queue then out of the queue.has been visited.
     private HashSet<GraphNode2<T>> finalized = new HashSet<>();
     
+    public Dijkstra() { frontLine = new BinaryPriorityQueue<>(); }
+    // use another priority queue, e.g. PairingHeap or RadixHeap
+    public Dijkstra(MinPriorityQueue<GraphNode2<T>, Double> q) { frontLine = q; }
+    
     public Double traverse(GraphNode2<T> source, GraphNode2<T> sink) {
         // if the graph is empty do nothing
         if (source == null) { return null; }
@@ -59,7 +70,279 @@ public class Dijkstra<T> {
     }
 //end{dijkstra-traverse}    
 
-    public static void main(String[] args) {
+    // frontier and finalized marks for traversal by node ids. They are
+    // kept across calls so that repeated queries do not allocate.
+    private IndexedMinPQ idFrontLine = null;
+    private boolean[] idFinalized = null;
+    
+    /**
+     * Same as traverse(source, sink) for graphs whose nodes have dense ids,
+     * such as those made by GraphNode2.buildGraph: nodes.get(i) must be
+     * the node with id i. Tentative distances live in an IndexedMinPQ
+     * instead of a hashed BinaryPriorityQueue, so relaxing an edge
+     * neither boxes nor hashes.
+     * @param nodes all nodes of the graph, indexed by id
+     * @param source id of the source node
+     * @param sink id of the sink node
+     * @return distance from source to sink; null if not reachable
+     */
+    public Double traverse(ArrayList<GraphNode2<T>> nodes, int source, int sink) {
+        if (source == sink) { return 0.0; }
+        
+        // initialization
+        resetIds(nodes.size());
+        
+        // visit the root
+        idFrontLine.push(source, 0.0);
+        
+        while (!idFrontLine.isEmpty()) {
+            // take out the node with smallest tentative distance
+            double parentDist = idFrontLine.topPriority();
+            int parent = idFrontLine.pop();
+            if (parent == sink) { return parentDist; }
+            idFinalized[parent] = true;
+            
+            // add children to the priority queue
+            for (WeightedValue<GraphNode2<T>,Double> edge : nodes.get(parent).edges) {
+                int child = edge.value.getId();
+                if (idFinalized[child]) { continue; }
+                double newDist = parentDist + edge.weight;
+                // update the distance of current child if either it has never
+                // visited or it is not finalized yet (but still in frontLine)
+                if (!idFrontLine.contains(child)
+                        || newDist < idFrontLine.getPriority(child)) {
+                    idFrontLine.push(child, newDist);
+                }
+            } // for
+        } // while
+        return null;
+    }
+
+    /**
+     * Same as traverse(source, sink) on an IntGraph, with int vertex ids.
+     * @return distance from source to sink; null if not reachable
+     */
+    public Double traverse(IntGraph graph, int source, int sink) {
+        if (source == sink) { return 0.0; }
+        
+        // initialization
+        resetIds(graph.vertexCount());
+        
+        // visit the root
+        idFrontLine.push(source, 0.0);
+        
+        while (!idFrontLine.isEmpty()) {
+            // take out the vertex with smallest tentative distance
+            double parentDist = idFrontLine.topPriority();
+            int parent = idFrontLine.pop();
+            if (parent == sink) { return parentDist; }
+            idFinalized[parent] = true;
+            
+            // add children to the priority queue
+            for (int e = graph.firstEdge(parent); e < graph.endEdge(parent); ++e) {
+                int child = graph.target(e);
+                if (idFinalized[child]) { continue; }
+                double newDist = parentDist + graph.weight(e);
+                if (!idFrontLine.contains(child)
+                        || newDist < idFrontLine.getPriority(child)) {
+                    idFrontLine.push(child, newDist);
+                }
+            } // for
+        } // while
+        return null;
+    }
+    
+    // helper: get the id-based frontier and marks ready for n ids
+    private void resetIds(int n) {
+        if (idFrontLine == null || idFrontLine.capacity() < n) {
+            idFrontLine = new IndexedMinPQ(n);
+            idFinalized = new boolean[n];
+        } else {
+            idFrontLine.clear();
+            Arrays.fill(idFinalized, false);
+        }
+    }
+
+    /**
+     * State of one search direction for a single query. Instead of
+     * clearing the arrays, every query bumps stamp: an entry of reached,
+     * settled or wanted counts only if it equals the current stamp.
+     */
+    static class Search {
+        IndexedMinPQ frontLine;
+        double[] dist;
+        int[] reached;  // dist[v] is valid iff reached[v] == stamp
+        int[] settled;  // dist[v] is final iff settled[v] == stamp
+        int[] wanted;   // v is a requested target iff wanted[v] == stamp
+        int stamp = 0;
+
+        Search(int n) {
+            frontLine = new IndexedMinPQ(n);
+            dist = new double[n];
+            reached = new int[n];
+            settled = new int[n];
+            wanted = new int[n];
+        }
+
+        void reset() {
+            frontLine.clear();
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(reached, 0);
+                Arrays.fill(settled, 0);
+                Arrays.fill(wanted, 0);
+                stamp = 1;
+            }
+        }
+
+        boolean isReached(int v) { return reached[v] == stamp; }
+        boolean isSettled(int v) { return settled[v] == stamp; }
+
+        // offer distance d for v; ignored unless it improves a tentative one
+        void relax(int v, double d) {
+            if (settled[v] == stamp) { return; }
+            if (reached[v] != stamp || d < dist[v]) {
+                dist[v] = d;
+                reached[v] = stamp;
+                frontLine.push(v, d);
+            }
+        }
+
+        // take out the vertex with smallest tentative distance
+        int settleNext() {
+            int u = frontLine.pop();
+            settled[u] = stamp;
+            return u;
+        }
+    }
+
+    // two searches (forward and backward) per thread, so one Dijkstra
+    // object can serve concurrent queries of the methods below
+    private final ThreadLocal<Search[]> searches = new ThreadLocal<>();
+
+    private Search search(int direction, int n) {
+        Search[] pair = searches.get();
+        if (pair == null) {
+            pair = new Search[2];
+            searches.set(pair);
+        }
+        if (pair[direction] == null || pair[direction].dist.length < n) {
+            pair[direction] = new Search(n);
+        }
+        Search search = pair[direction];
+        search.reset();
+        return search;
+    }
+
+    /**
+     * Point-to-point distance by searching forward from source and
+     * backward from sink at the same time, always expanding the smaller
+     * frontier. best is the shortest source-sink path seen where the two
+     * searches meet; once the two smallest tentative distances add up to
+     * at least best, no shorter path can exist.
+     * Thread-safe: all state is per query.
+     * @param graph the graph
+     * @param reverse the graph with all edges reversed, e.g. from
+     *        CSRGraph.reverse(graph); the graph itself if undirected
+     * @return distance from source to sink; null if not reachable
+     */
+    public Double bidirectional(IntGraph graph, IntGraph reverse, int source, int sink) {
+        if (source == sink) { return 0.0; }
+        int n = graph.vertexCount();
+        Search forward = search(0, n);
+        Search backward = search(1, n);
+        forward.relax(source, 0.0);
+        backward.relax(sink, 0.0);
+        double best = Double.POSITIVE_INFINITY;
+
+        while (!forward.frontLine.isEmpty() && !backward.frontLine.isEmpty()) {
+            if (forward.frontLine.topPriority()
+                    + backward.frontLine.topPriority() >= best) {
+                break;
+            }
+            boolean isForward = forward.frontLine.size() <= backward.frontLine.size();
+            Search current = isForward ? forward : backward;
+            Search other = isForward ? backward : forward;
+            IntGraph edges = isForward ? graph : reverse;
+
+            double parentDist = current.frontLine.topPriority();
+            int parent = current.settleNext();
+            for (int e = edges.firstEdge(parent); e < edges.endEdge(parent); ++e) {
+                int child = edges.target(e);
+                double newDist = parentDist + edges.weight(e);
+                current.relax(child, newDist);
+                if (other.isReached(child)) {
+                    best = Math.min(best, newDist + other.dist[child]);
+                }
+            }
+        }
+        return best == Double.POSITIVE_INFINITY ? null : best;
+    }
+
+    /**
+     * Distances from source to several targets, stopping as soon as all
+     * of them are settled rather than sweeping the whole graph.
+     * Thread-safe: all state is per query.
+     * @return result[i] is the distance to targets[i], infinity if
+     *         not reachable
+     */
+    public double[] traverse(IntGraph graph, int source, int[] targets) {
+        Search search = search(0, graph.vertexCount());
+        int remaining = 0;
+        for (int t : targets) {
+            if (search.wanted[t] != search.stamp) {
+                search.wanted[t] = search.stamp;
+                ++remaining;
+            }
+        }
+
+        search.relax(source, 0.0);
+        while (remaining > 0 && !search.frontLine.isEmpty()) {
+            double parentDist = search.frontLine.topPriority();
+            int parent = search.settleNext();
+            if (search.wanted[parent] == search.stamp) { --remaining; }
+            for (int e = graph.firstEdge(parent); e < graph.endEdge(parent); ++e) {
+                search.relax(graph.target(e), parentDist + graph.weight(e));
+            }
+        }
+
+        double[] result = new double[targets.length];
+        for (int i = 0; i < targets.length; ++i) {
+            result[i] = search.isSettled(targets[i])
+                    ? search.dist[targets[i]] : Double.POSITIVE_INFINITY;
+        }
+        return result;
+    }
+
+    // full single-source sweeps with each priority queue
+    private static void benchmark(String name, Double[][][] edgeLists) {
+        Integer[] values = new Integer[edgeLists.length];
+        for (int i = 0; i < values.length; ++i) { values[i] = i; }
+        ArrayList<GraphNode2<Integer>> nodes = GraphNode2.buildGraph(values, edgeLists);
+        GraphNode2<Integer> s = nodes.get(0);
+        GraphNode2<Integer> t = nodes.get(nodes.size() - 1);
+
+        ArrayList<Dijkstra<Integer>> solvers = new ArrayList<>();
+        solvers.add(new Dijkstra<Integer>());
+        solvers.add(new Dijkstra<Integer>(new BinaryPriorityQueue<GraphNode2<Integer>, Double>(4)));
+        solvers.add(new Dijkstra<Integer>(new PairingHeap<GraphNode2<Integer>, Double>()));
+        solvers.add(new Dijkstra<Integer>(new RadixHeap<GraphNode2<Integer>>()));
+        String[] queues = {"binary heap", "4-ary heap", "pairing heap", "radix heap"};
+
+        for (int round = 0; round < 3; ++round) {
+            StringBuffer line = new StringBuffer(name + ", " + nodes.size() + " nodes:");
+            for (int k = 0; k < solvers.size(); ++k) {
+                long start = System.nanoTime();
+                // a sink that is never reached makes it a full sweep
+                solvers.get(k).traverse(s, null);
+                long elapsed = System.nanoTime() - start;
+                line.append(" " + queues[k] + " " + elapsed/1000000 + "ms"
+                        + " (dist " + solvers.get(k).traverse(s, t) + ")");
+            }
+            System.out.println(line);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
         Integer[] values = {0,1,2,3,4,5,6,7,8};
         Double[][][] edgeLists = {
                 {{1.0,2.0},{2.0,1.0}},
@@ -88,5 +371,54 @@ public class Dijkstra<T> {
                 System.out.println("Distance from " + s + " to " + t + " is " + dist);
             }
         }
+        
+        System.out.println("--------------");
+        System.out.println("by node ids:");
+        for (int t = 0; t < nodes.size(); ++t) {
+            Double dist = bfs.traverse(nodes, 0, t);
+            if (dist == null) {
+                System.out.println(t + " is not reachable from 0");
+            } else {
+                System.out.println("Distance from 0 to " + t + " is " + dist);
+            }
+        }
+        
+        System.out.println("--------------");
+        System.out.println("on a CSRGraph:");
+        CSRGraph graph = CSRGraph.buildGraph(values.length, edgeLists);
+        for (int t = 0; t < graph.vertexCount(); ++t) {
+            Double dist = bfs.traverse(graph, 0, t);
+            if (dist == null) {
+                System.out.println(t + " is not reachable from 0");
+            } else {
+                System.out.println("Distance from 0 to " + t + " is " + dist);
+            }
+        }
+        
+        System.out.println("--------------");
+        System.out.println("on a memory-mapped file:");
+        Path file = Files.createTempFile("graph", ".csr");
+        MappedCSRGraph.write(graph, file);
+        MappedCSRGraph mapped = MappedCSRGraph.open(file);
+        for (int t = 0; t < mapped.vertexCount(); ++t) {
+            System.out.println("Distance from 0 to " + t + " is " + bfs.traverse(mapped, 0, t));
+        }
+        Files.delete(file);
+        
+        System.out.println("--------------");
+        CSRGraph reverse = CSRGraph.reverse(graph);
+        for (int t = 0; t < graph.vertexCount(); ++t) {
+            System.out.println("Bidirectional distance from 0 to " + t + " is "
+                    + bfs.bidirectional(graph, reverse, 0, t));
+        }
+        int[] targets = {3, 5, 7};
+        System.out.println("Distances from 0 to " + Arrays.toString(targets) + " are "
+                + Arrays.toString(bfs.traverse(graph, 0, targets)));
+        
+        // pass a grid side as first argument for larger benchmarks
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        java.util.Random random = new java.util.Random(42);
+        benchmark("grid", RandomGraphs.grid(side, side, 100, random));
+        benchmark("scale-free", RandomGraphs.scaleFree(side * side, 3, 100, random));
     }
 }
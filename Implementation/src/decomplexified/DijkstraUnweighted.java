@@ -1,10 +1,17 @@
 package decomplexified;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
+import decomplexified.util.Allocations;
+import decomplexified.util.CSRGraph;
+import decomplexified.util.IntGraph;
 import decomplexified.util.GraphNode;
+import decomplexified.util.RandomGraphs;
 
 /**
  * @author Alan
@@ -14,12 +21,13 @@ public class DijkstraUnweighted<T> {
 //begin{dijkstra-traverse}    
     // an FIFO queue to remember nodes which have been visited
     // but not their children
-    private LinkedList<GraphNode<T>> frontLine = new LinkedList<>();
+    private ArrayDeque<GraphNode<T>> frontLine = new ArrayDeque<>();
     
-    // mapping from nodes to distances, also used to mark if a node has
-    // been visited: a node has been visited if and only if it has been
-    // added to the mapping before.
-    private HashMap<GraphNode<T>, Integer> distances = new HashMap<>();
+    // set used to mark visited nodes: a node has been visited if and
+    // only if it has been added to the set before. Distances are not
+    // stored; instead the queue is emptied one distance at a time.
+    private Set<GraphNode<T>> visited =
+            Collections.newSetFromMap(new IdentityHashMap<GraphNode<T>, Boolean>());
     
     public Integer traverse(GraphNode<T> source, GraphNode<T> sink) {
         // if the graph is empty do nothing
@@ -28,30 +36,81 @@ public class DijkstraUnweighted<T> {
         
         // initialization
         frontLine.clear();
-        distances.clear();
+        visited.clear();
         
         // visit the root
-        distances.put(source, 0);
+        visited.add(source);
         frontLine.addFirst(source);
+        int parentDist = 0;
 
         while (!frontLine.isEmpty()) {
-            // take out the oldest node
-            GraphNode<T> parent = frontLine.pollLast();
-            int parentDist = distances.get(parent);
+            // take out all nodes at distance parentDist, oldest first
+            for (int count = frontLine.size(); count > 0; --count) {
+                GraphNode<T> parent = frontLine.pollLast();
+                
+                // add children to the queue
+                for (int i = 0; i < parent.neighbors.size(); ++i) {
+                    GraphNode<T> child = parent.neighbors.get(i);
+                    if (visited.contains(child)) { continue; }
+                    if (child == sink) { return parentDist + 1; }
+                    
+                    visited.add(child);
+                    frontLine.addFirst(child);
+                } // for
+            } // for
+            ++parentDist;
+        } // while
+        return null;
+    }
+//end{dijkstra-traverse}    
+
+    // queue, distances and visited marks of traverse(IntGraph, int, int),
+    // kept to be reused by the next traversal
+    private int[] vertexFrontLine = new int[0];
+    private int[] dist = new int[0];
+    private BitSet visitedVertex = new BitSet();
+    
+    /**
+     * Same as traverse(source, sink) on an IntGraph: the FIFO queue is an
+     * int[], distances live in an int[] indexed by vertex, and a bitmap
+     * marks the vertices visited, i.e. whose distance is valid.
+     */
+    public Integer traverse(IntGraph graph, int source, int sink) {
+        if (source == sink) { return 0; }
+        
+        int n = graph.vertexCount();
+        if (dist.length < n) {
+            vertexFrontLine = new int[n];
+            dist = new int[n];
+        }
+        int[] frontLine = vertexFrontLine;
+        visitedVertex.clear();
+        int head = 0;
+        int tail = 0;
+        
+        // visit the root
+        dist[source] = 0;
+        visitedVertex.set(source);
+        frontLine[tail++] = source;
+        
+        while (head < tail) {
+            // take out the oldest vertex
+            int parent = frontLine[head++];
+            int newDist = dist[parent] + 1;
             
             // add children to the queue
-            for (GraphNode<T> child : parent.neighbors) {
-                if (distances.containsKey(child)) { continue; }
-                int newDist = parentDist + 1;
+            for (int e = graph.firstEdge(parent); e < graph.endEdge(parent); ++e) {
+                int child = graph.target(e);
+                if (visitedVertex.get(child)) { continue; }
                 if (child == sink) { return newDist; }
                 
-                distances.put(child, newDist);
-                frontLine.addFirst(child);
+                dist[child] = newDist;
+                visitedVertex.set(child);
+                frontLine[tail++] = child;
             } // for
         } // while
         return null;
     }
-//end{dijkstra-traverse}    
 
     public static void main(String[] args) {
         Integer[][] families = {{0,1,2},{1,0,3,4},{2,0,4,5,6},{3,1},{4,1,2,7,8},
@@ -68,6 +127,44 @@ public class DijkstraUnweighted<T> {
                 System.out.println("Distance from " + s + " to " + t + " is " + dist);
             }
         }
+        
+        System.out.println("-----------");
+        CSRGraph graph = CSRGraph.buildGraph(values.length, families);
+        for (int t = 0; t < graph.vertexCount(); ++t) {
+            Integer dist = bfs.traverse(graph, 0, t);
+            if (dist == null) {
+                System.out.println(t + " is not reachable from 0");
+            } else {
+                System.out.println("Distance from 0 to " + t + " is " + dist);
+            }
+        }
+
+        // bytes allocated per query, on a small grid unless a side is
+        // given as first argument; BFSGraph.main benchmarks a large one
+        System.out.println("-----------");
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        Integer[][] grid = RandomGraphs.grid(side, side);
+        Integer[] gridValues = new Integer[grid.length];
+        for (int i = 0; i < gridValues.length; ++i) { gridValues[i] = i; }
+        ArrayList<GraphNode<Integer>> gridNodes = GraphNode.buildGraph(gridValues, grid);
+        CSRGraph csr = CSRGraph.buildGraph(grid.length, grid);
+        int last = grid.length - 1;
+        for (int round = 0; round < 2; ++round) {
+            long start = System.nanoTime();
+            long bytes = Allocations.allocatedBytes();
+            Integer nodeDist = bfs.traverse(gridNodes.get(0), gridNodes.get(last));
+            long nodeTime = System.nanoTime() - start;
+            long nodeBytes = Allocations.allocatedBytes() - bytes;
+            start = System.nanoTime();
+            bytes = Allocations.allocatedBytes();
+            Integer csrDist = bfs.traverse(csr, 0, last);
+            long csrTime = System.nanoTime() - start;
+            long csrBytes = Allocations.allocatedBytes() - bytes;
+            System.out.println("corner to corner of " + grid.length + " nodes: GraphNode "
+                    + nodeDist + " in " + nodeTime / 1000000 + "ms, " + nodeBytes
+                    + " bytes allocated; IntGraph " + csrDist + " in " + csrTime / 1000000
+                    + "ms, " + csrBytes + " bytes allocated");
+        }
     }
 
 }
@@ -0,0 +1,147 @@
+package decomplexified;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * @author Alan
+ *  Min-heap of primitive doubles. Same algorithm as BinaryHeap, but values
+ *  live in a growable double[] so push and pop never allocate (except when
+ *  the array has to grow). NaN is rejected, as it compares false with
+ *  everything and would break the heap order.
+ */
+public class DoubleBinaryHeap {
+    protected double[] nodes;
+    protected int size = 0;
+
+    DoubleBinaryHeap() { this(16); }
+    DoubleBinaryHeap(int capacity) { nodes = new double[Math.max(capacity, 1)]; }
+
+    // simple methods
+    public double top() {
+        if (size == 0) { throw new NoSuchElementException(); }
+        return nodes[0];
+    }
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public void clear() { size = 0; }
+
+    // push a new value
+    public void push(double value) {
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("value is NaN");
+        }
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+        }
+
+        // move the hole at the end up until value fits, then fill it
+        int i = size++;
+        while (i > 0) {
+            int p = (i-1)/2;
+            if (nodes[p] <= value) { break; }
+            nodes[i] = nodes[p];
+            i = p;
+        }
+        nodes[i] = value;
+    }
+
+    // remove top value
+    public double pop() {
+        if (size == 0) { throw new NoSuchElementException(); }
+        double topValue = nodes[0];
+
+        // the last value goes into the hole left at the root
+        double last = nodes[--size];
+        int i = 0;
+        while (true) {
+            int smallerChild = 2*i+1;
+            if (smallerChild >= size) { break; }
+            int R = smallerChild + 1;
+            if (R < size && nodes[R] < nodes[smallerChild]) {
+                smallerChild = R;
+            }
+            if (last <= nodes[smallerChild]) { break; }
+            nodes[i] = nodes[smallerChild];
+            i = smallerChild;
+        }
+        nodes[i] = last;
+
+        return topValue;
+    }
+
+    /**
+     * print nodes by level, mainly for debugging purpose
+     */
+    public String toString() {
+        StringBuffer result = new StringBuffer();
+        int limit = 1;
+        int count = 0;
+        for (int k = 0; k < size; ++k) {
+            if (count == limit) {
+                result.append("\n");
+                limit *= 2;
+                count = 0;
+            }
+            result.append(nodes[k] + " ");
+            count++;
+        }
+        return result.toString();
+    }
+
+/////////////////////////////////////////////////////////////////////
+
+    private static void pushPopTest() {
+        DoubleBinaryHeap heap = new DoubleBinaryHeap(4);
+        int[] values = {1,5,3,7,7,4,6,8,8,8,9,5,5,8,7,9,8,8};
+        for (int v : values) {
+            heap.push(v);
+        }
+        System.out.println("pushed:");
+        System.out.println(heap);
+
+        StringBuffer popped = new StringBuffer();
+        while (!heap.isEmpty()) {
+            popped.append(heap.pop() + " ");
+        }
+        System.out.println("popped in order:");
+        System.out.println(popped);
+
+        try {
+            heap.push(Double.NaN);
+        } catch (IllegalArgumentException e) {
+            System.out.println("push(NaN): " + e.getMessage());
+        }
+    }
+
+    // rough comparison against the generic heap; pass n as first argument
+    private static void benchmark(int n) {
+        java.util.Random random = new java.util.Random(42);
+        double[] values = new double[n];
+        for (int i = 0; i < n; ++i) { values[i] = random.nextDouble(); }
+
+        for (int round = 0; round < 3; ++round) {
+            long start = System.nanoTime();
+            BinaryHeap<Double> boxed = new BinaryHeap<>();
+            for (double v : values) { boxed.push(v); }
+            double sum1 = 0;
+            while (!boxed.isEmpty()) { sum1 += boxed.pop(); }
+            long t1 = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            DoubleBinaryHeap primitive = new DoubleBinaryHeap(n);
+            for (double v : values) { primitive.push(v); }
+            double sum2 = 0;
+            while (!primitive.isEmpty()) { sum2 += primitive.pop(); }
+            long t2 = System.nanoTime() - start;
+
+            System.out.println("n=" + n + " BinaryHeap<Double>: " + t1/1000000
+                    + "ms, DoubleBinaryHeap: " + t2/1000000 + "ms"
+                    + (sum1 == sum2 ? "" : " MISMATCH"));
+        }
+    }
+
+    public static void main(String[] args) {
+        pushPopTest();
+        benchmark(args.length > 0 ? Integer.parseInt(args[0]) : 1000000);
+    }
+}
@@ -0,0 +1,238 @@
+package decomplexified;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * @author Alan
+ *  Priority queue over dense int ids in [0, capacity), each with a double
+ *  priority. Positions are tracked in a flat int[] instead of the HashMap
+ *  used by BinaryPriorityQueue, so no operation allocates. NaN priorities
+ *  are rejected, as they compare false with everything.
+ */
+public class IndexedMinPQ {
+    // heap[i] is the id stored at heap position i
+    protected int[] heap;
+    // pos[id] is the heap position of id, -1 if id is not in the queue
+    protected int[] pos;
+    // keys[id] is the priority of id
+    protected double[] keys;
+    protected int size = 0;
+
+    public IndexedMinPQ(int capacity) {
+        heap = new int[capacity];
+        pos = new int[capacity];
+        keys = new double[capacity];
+        Arrays.fill(pos, -1);
+    }
+
+    // simple methods
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public int capacity() { return pos.length; }
+    public boolean contains(int id) { return pos[id] >= 0; }
+
+    // costs O(size), not O(capacity)
+    public void clear() {
+        for (int i = 0; i < size; ++i) {
+            pos[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    public double getPriority(int id) {
+        if (pos[id] < 0) { throw new NoSuchElementException("" + id); }
+        return keys[id];
+    }
+
+    public int top() {
+        if (size == 0) { throw new NoSuchElementException(); }
+        return heap[0];
+    }
+
+    public double topPriority() {
+        if (size == 0) { throw new NoSuchElementException(); }
+        return keys[heap[0]];
+    }
+
+    /**
+     * Insert an id by an associated priority,
+     * or update its priority if it exists already
+     * @return whether the id existed before
+     */
+    public boolean push(int id, double priority) {
+        checkPriority(priority);
+        int i = pos[id];
+        if (i < 0) {
+            keys[id] = priority;
+            siftUp(size++, id);
+            return false;
+        }
+        double old = keys[id];
+        keys[id] = priority;
+        if (priority < old) {
+            siftUp(i, id);
+        } else if (priority > old) {
+            siftDown(i, id);
+        }
+        return true;
+    }
+
+    // lower the priority of an id already in the queue
+    public void decreaseKey(int id, double priority) {
+        int i = pos[id];
+        if (i < 0) { throw new NoSuchElementException("" + id); }
+        checkPriority(priority);
+        if (priority > keys[id]) {
+            throw new IllegalArgumentException("priority would increase: " + id);
+        }
+        keys[id] = priority;
+        siftUp(i, id);
+    }
+
+    // raise the priority of an id already in the queue
+    public void increaseKey(int id, double priority) {
+        int i = pos[id];
+        if (i < 0) { throw new NoSuchElementException("" + id); }
+        checkPriority(priority);
+        if (priority < keys[id]) {
+            throw new IllegalArgumentException("priority would decrease: " + id);
+        }
+        keys[id] = priority;
+        siftDown(i, id);
+    }
+
+    // helper: the sifts compare with < and <=, so NaN would break the heap
+    private static void checkPriority(double priority) {
+        if (Double.isNaN(priority)) {
+            throw new IllegalArgumentException("priority is NaN");
+        }
+    }
+
+    // remove top id
+    public int pop() {
+        if (size == 0) { throw new NoSuchElementException(); }
+        int topId = heap[0];
+        removeAt(0);
+        return topId;
+    }
+
+    // remove an arbitrary id; return whether it was in the queue
+    public boolean remove(int id) {
+        int i = pos[id];
+        if (i < 0) { return false; }
+        removeAt(i);
+        return true;
+    }
+
+    /**
+     * helper: remove the id at heap position i. The last id goes into
+     * the hole and moves down, or up if it is smaller than its new parent.
+     */
+    private void removeAt(int i) {
+        pos[heap[i]] = -1;
+        int last = heap[--size];
+        if (i == size) { return; }
+        if (siftDown(i, last) == i) {
+            siftUp(i, last);
+        }
+    }
+
+    /**
+     * helper: treat heap position i as a hole and move it up until id fits
+     * @return position where id ends up
+     */
+    private int siftUp(int i, int id) {
+        double key = keys[id];
+        while (i > 0) {
+            int p = (i-1)/2;
+            int parent = heap[p];
+            if (keys[parent] <= key) { break; }
+            heap[i] = parent;
+            pos[parent] = i;
+            i = p;
+        }
+        heap[i] = id;
+        pos[id] = i;
+        return i;
+    }
+
+    /**
+     * helper: treat heap position i as a hole and move it down until id fits
+     * @return position where id ends up
+     */
+    private int siftDown(int i, int id) {
+        double key = keys[id];
+        while (true) {
+            int smallerChild = 2*i+1;
+            if (smallerChild >= size) { break; }
+            int R = smallerChild + 1;
+            if (R < size && keys[heap[R]] < keys[heap[smallerChild]]) {
+                smallerChild = R;
+            }
+            int child = heap[smallerChild];
+            if (key <= keys[child]) { break; }
+            heap[i] = child;
+            pos[child] = i;
+            i = smallerChild;
+        }
+        heap[i] = id;
+        pos[id] = i;
+        return i;
+    }
+
+    /**
+     * print ids with priorities by level, mainly for debugging purpose
+     */
+    public String toString() {
+        StringBuffer result = new StringBuffer();
+        int limit = 1;
+        int count = 0;
+        for (int k = 0; k < size; ++k) {
+            if (count == limit) {
+                result.append("\n");
+                limit *= 2;
+                count = 0;
+            }
+            result.append(heap[k] + "{w=" + keys[heap[k]] + "} ");
+            count++;
+        }
+        return result.toString();
+    }
+
+/////////////////////////////////////////////////////////////////////
+
+    public static void main(String[] args) {
+        double[] priorities = {1, 5, 3, 7, 7, 4, 6, 8, 8, 8};
+        IndexedMinPQ pQueue = new IndexedMinPQ(priorities.length);
+        for (int id = 0; id < priorities.length; ++id) {
+            pQueue.push(id, priorities[id]);
+        }
+        System.out.println("before:");
+        System.out.println(pQueue);
+
+        pQueue.decreaseKey(9, 2);
+        System.out.println("decreased 9 to 2:");
+        System.out.println(pQueue);
+
+        pQueue.increaseKey(0, 9);
+        System.out.println("increased 0 to 9:");
+        System.out.println(pQueue);
+
+        pQueue.remove(2);
+        System.out.println("removed 2, contains 2? " + pQueue.contains(2));
+        System.out.println(pQueue);
+
+        StringBuffer popped = new StringBuffer();
+        while (!pQueue.isEmpty()) {
+            popped.append(pQueue.topPriority() + ":" + pQueue.pop() + " ");
+        }
+        System.out.println("popped in order:");
+        System.out.println(popped);
+
+        try {
+            pQueue.push(0, Double.NaN);
+        } catch (IllegalArgumentException e) {
+            System.out.println("push(0, NaN): " + e.getMessage());
+        }
+    }
+}
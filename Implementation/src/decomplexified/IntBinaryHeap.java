@@ -0,0 +1,137 @@
+package decomplexified;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * @author Alan
+ *  Min-heap of primitive ints. Same algorithm as BinaryHeap, but values
+ *  live in a growable int[] so push and pop never allocate (except when
+ *  the array has to grow).
+ */
+public class IntBinaryHeap {
+    protected int[] nodes;
+    protected int size = 0;
+
+    IntBinaryHeap() { this(16); }
+    IntBinaryHeap(int capacity) { nodes = new int[Math.max(capacity, 1)]; }
+
+    // simple methods
+    public int top() {
+        if (size == 0) { throw new NoSuchElementException(); }
+        return nodes[0];
+    }
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public void clear() { size = 0; }
+
+    // push a new value
+    public void push(int value) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+        }
+
+        // move the hole at the end up until value fits, then fill it
+        int i = size++;
+        while (i > 0) {
+            int p = (i-1)/2;
+            if (nodes[p] <= value) { break; }
+            nodes[i] = nodes[p];
+            i = p;
+        }
+        nodes[i] = value;
+    }
+
+    // remove top value
+    public int pop() {
+        if (size == 0) { throw new NoSuchElementException(); }
+        int topValue = nodes[0];
+
+        // the last value goes into the hole left at the root
+        int last = nodes[--size];
+        int i = 0;
+        while (true) {
+            int smallerChild = 2*i+1;
+            if (smallerChild >= size) { break; }
+            int R = smallerChild + 1;
+            if (R < size && nodes[R] < nodes[smallerChild]) {
+                smallerChild = R;
+            }
+            if (last <= nodes[smallerChild]) { break; }
+            nodes[i] = nodes[smallerChild];
+            i = smallerChild;
+        }
+        nodes[i] = last;
+
+        return topValue;
+    }
+
+    /**
+     * print nodes by level, mainly for debugging purpose
+     */
+    public String toString() {
+        StringBuffer result = new StringBuffer();
+        int limit = 1;
+        int count = 0;
+        for (int k = 0; k < size; ++k) {
+            if (count == limit) {
+                result.append("\n");
+                limit *= 2;
+                count = 0;
+            }
+            result.append(nodes[k] + " ");
+            count++;
+        }
+        return result.toString();
+    }
+
+/////////////////////////////////////////////////////////////////////
+
+    private static void pushPopTest() {
+        IntBinaryHeap heap = new IntBinaryHeap(4);
+        int[] values = {1,5,3,7,7,4,6,8,8,8,9,5,5,8,7,9,8,8};
+        for (int v : values) {
+            heap.push(v);
+        }
+        System.out.println("pushed:");
+        System.out.println(heap);
+
+        StringBuffer popped = new StringBuffer();
+        while (!heap.isEmpty()) {
+            popped.append(heap.pop() + " ");
+        }
+        System.out.println("popped in order:");
+        System.out.println(popped);
+    }
+
+    // rough comparison against the generic heap; pass n as first argument
+    private static void benchmark(int n) {
+        java.util.Random random = new java.util.Random(42);
+        int[] values = new int[n];
+        for (int i = 0; i < n; ++i) { values[i] = random.nextInt(); }
+
+        for (int round = 0; round < 3; ++round) {
+            long start = System.nanoTime();
+            BinaryHeap<Integer> boxed = new BinaryHeap<>();
+            for (int v : values) { boxed.push(v); }
+            long sum1 = 0;
+            while (!boxed.isEmpty()) { sum1 += boxed.pop(); }
+            long t1 = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            IntBinaryHeap primitive = new IntBinaryHeap(n);
+            for (int v : values) { primitive.push(v); }
+            long sum2 = 0;
+            while (!primitive.isEmpty()) { sum2 += primitive.pop(); }
+            long t2 = System.nanoTime() - start;
+
+            System.out.println("n=" + n + " BinaryHeap<Integer>: " + t1/1000000
+                    + "ms, IntBinaryHeap: " + t2/1000000 + "ms"
+                    + (sum1 == sum2 ? "" : " MISMATCH"));
+        }
+    }
+
+    public static void main(String[] args) {
+        pushPopTest();
+        benchmark(args.length > 0 ? Integer.parseInt(args[0]) : 1000000);
+    }
+}
@@ -4,7 +4,9 @@
 package decomplexified;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
+import decomplexified.util.RandomGraphs;
 import decomplexified.util.TreeNode;
 
 /**
@@ -55,6 +57,122 @@ public class LCA<T> {
         return info;
     }
 //end{lca}
+
+    // frames of lcaIterative, one per tree level, kept to be reused by the
+    // next call: the node, how many of its children are done, and what
+    // its subtree has shown so far
+    private TreeNode<T>[] frameNode = TreeNode.newArray(16);
+    private byte[] frameChildrenDone = new byte[16];
+    private boolean[] frameHasA = new boolean[16];
+    private boolean[] frameHasB = new boolean[16];
+
+    /**
+     * Same result as lca(a, b, root), but the recursion is replaced by an
+     * explicit stack of pooled frames, so the depth of the tree is only
+     * bounded by the heap, and nothing is allocated per node. It also
+     * stops as soon as the LCA is found.
+     */
+    public LCAInfo<T> lcaIterative(TreeNode<T> a, TreeNode<T> b, TreeNode<T> root) {
+        LCAInfo<T> info = new LCAInfo<>();
+        if (a == null || b == null || root == null) {
+            return info;
+        }
+
+        int top = 0;
+        frameNode[0] = root;
+        frameChildrenDone[0] = 0;
+        frameHasA[0] = false;
+        frameHasB[0] = false;
+        int deepest = 0;
+
+        while (top >= 0) {
+            TreeNode<T> node = frameNode[top];
+            // the child to descend into next, if any
+            TreeNode<T> child = null;
+            if (frameChildrenDone[top] == 0) {
+                child = node.left;
+            } else if (frameChildrenDone[top] == 1) {
+                child = node.right;
+            }
+
+            if (frameChildrenDone[top] < 2) {
+                ++frameChildrenDone[top];
+                if (child == null) { continue; }
+                if (++top == frameNode.length) { growFrames(); }
+                deepest = Math.max(deepest, top);
+                frameNode[top] = child;
+                frameChildrenDone[top] = 0;
+                frameHasA[top] = false;
+                frameHasB[top] = false;
+                continue;
+            }
+
+            // both subtrees done
+            boolean hasA = frameHasA[top] || node == a;
+            boolean hasB = frameHasB[top] || node == b;
+            if (hasA && hasB) {
+                // the first node whose subtree has both is the LCA, and
+                // every ancestor would just pass it up
+                info.lca = node;
+                info.hasA = true;
+                info.hasB = true;
+                break;
+            }
+            if (--top >= 0) {
+                frameHasA[top] |= hasA;
+                frameHasB[top] |= hasB;
+            } else {
+                info.hasA = hasA;
+                info.hasB = hasB;
+            }
+        }
+
+        // the frames outlive the call: drop their nodes so the tree can
+        // be collected
+        Arrays.fill(frameNode, 0, deepest + 1, null);
+        return info;
+    }
+
+    private void growFrames() {
+        int n = 2 * frameNode.length;
+        frameNode = Arrays.copyOf(frameNode, n);
+        frameChildrenDone = Arrays.copyOf(frameChildrenDone, n);
+        frameHasA = Arrays.copyOf(frameHasA, n);
+        frameHasB = Arrays.copyOf(frameHasB, n);
+    }
+
+    // time count calls of lca or lcaIterative; -1 on a stack overflow
+    private static long time(LCA<Integer> solver, boolean iterative, TreeNode<Integer> a,
+            TreeNode<Integer> b, TreeNode<Integer> root, int count) {
+        long start = System.nanoTime();
+        try {
+            for (int k = 0; k < count; ++k) {
+                if (iterative) {
+                    solver.lcaIterative(a, b, root);
+                } else {
+                    solver.lca(a, b, root);
+                }
+            }
+        } catch (StackOverflowError e) {
+            return -1;
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void benchmark(String name, ArrayList<TreeNode<Integer>> nodes, int count) {
+        LCA<Integer> solver = new LCA<>();
+        TreeNode<Integer> root = nodes.get(0);
+        // the last two nodes are deep and force a walk of the whole tree
+        TreeNode<Integer> a = nodes.get(nodes.size() - 1);
+        TreeNode<Integer> b = nodes.get(nodes.size() - 2);
+        for (int round = 0; round < 3; ++round) {
+            long recursive = time(solver, false, a, b, root, count);
+            long iterative = time(solver, true, a, b, root, count);
+            System.out.println(name + ", " + nodes.size() + " nodes, " + count + " queries: recursive "
+                    + (recursive < 0 ? "stack overflow" : recursive / 1000000 + "ms")
+                    + ", iterative " + iterative / 1000000 + "ms");
+        }
+    }
     
     public static void main(String[] args) {
         Integer[][] family = {{0,1,2},{1,3,4},{2,5,6},{4,7,8},{6,9,null}};
@@ -75,6 +193,13 @@ public class LCA<T> {
             }
             System.out.println();
         }
+
+        // pass the node count as first argument
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        Integer[] manyValues = new Integer[n];
+        for (int i = 0; i < n; ++i) { manyValues[i] = i; }
+        benchmark("balanced", TreeNode.buildTree(manyValues, RandomGraphs.completeBinaryTree(n)), 20);
+        benchmark("path", TreeNode.buildTree(manyValues, RandomGraphs.pathTree(n)), 20);
     }
 
 }
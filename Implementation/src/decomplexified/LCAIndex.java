@@ -0,0 +1,281 @@
+package decomplexified;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+import decomplexified.util.RandomGraphs;
+import decomplexified.util.TreeNode;
+
+/**
+ * @author Alan
+ *  Lowest common ancestors in a static tree, preprocessed once so that
+ *  each query costs O(1) instead of the O(n) walk of LCA.lca.
+ *
+ *  Nodes are numbered in pre-order; a node's id is its position. For
+ *  ids u < v, every node at a position in (u, v] lies below lca(u, v),
+ *  and the child of the LCA on the way to v is among them. So the LCA is
+ *  the smallest parent id in that range: a range-minimum query, answered
+ *  by a sparse table of minima over ranges of length 2^k. This needs n-1
+ *  entries per level rather than the 2n-1 of an Euler tour.
+ *
+ *  Preprocessing is O(n log n) time and memory, iterative, so deep trees
+ *  are fine. For a batch of queries known up front, lca(int[], int[])
+ *  runs Tarjan's offline algorithm in O(n + q) memory instead.
+ */
+public class LCAIndex<T> {
+    // nodes by id, i.e. in pre-order
+    private final TreeNode<T>[] nodes;
+    private final IdentityHashMap<TreeNode<T>, Integer> ids;
+    // children ids, -1 for none; used by the offline queries
+    private final int[] left;
+    private final int[] right;
+    // minParent[k][i] = smallest parent id of the nodes at i+1 .. i+2^k
+    private final int[][] minParent;
+
+    public LCAIndex(TreeNode<T> root) {
+        // count the nodes first to size the arrays
+        int n = 0;
+        TreeNode<T>[] stack = TreeNode.newArray(16);
+        if (root != null) {
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                TreeNode<T> node = stack[--top];
+                ++n;
+                if (top + 2 > stack.length) { stack = Arrays.copyOf(stack, 2 * stack.length); }
+                if (node.right != null) { stack[top++] = node.right; }
+                if (node.left != null) { stack[top++] = node.left; }
+            }
+        }
+
+        // pre-order numbering; the stack also holds the parent of each node
+        nodes = TreeNode.newArray(n);
+        ids = new IdentityHashMap<>(n);
+        left = new int[n];
+        right = new int[n];
+        Arrays.fill(left, -1);
+        Arrays.fill(right, -1);
+        int[] parent = new int[n];
+        int[] stackParent = new int[stack.length];
+        if (root != null) {
+            int top = 0;
+            int next = 0;
+            stack[top] = root;
+            stackParent[top++] = -1;
+            while (top > 0) {
+                TreeNode<T> node = stack[--top];
+                int p = stackParent[top];
+                int id = next++;
+                nodes[id] = node;
+                ids.put(node, id);
+                parent[id] = p;
+                if (p >= 0) {
+                    if (nodes[p].left == node) { left[p] = id; } else { right[p] = id; }
+                }
+                if (node.right != null) { stack[top] = node.right; stackParent[top++] = id; }
+                if (node.left != null) { stack[top] = node.left; stackParent[top++] = id; }
+            }
+        }
+
+        // sparse table over parent[1..n-1]
+        int levels = n > 1 ? 32 - Integer.numberOfLeadingZeros(n - 1) : 0;
+        minParent = new int[levels][];
+        if (levels > 0) {
+            minParent[0] = Arrays.copyOfRange(parent, 1, n);
+        }
+        for (int k = 1; k < levels; ++k) {
+            int[] below = minParent[k - 1];
+            int half = 1 << (k - 1);
+            int[] level = new int[below.length - half];
+            for (int i = 0; i < level.length; ++i) {
+                level[i] = Math.min(below[i], below[i + half]);
+            }
+            minParent[k] = level;
+        }
+    }
+
+    public int size() { return nodes.length; }
+
+    // pre-order id of a node; -1 if it is not in the tree
+    public int id(TreeNode<T> node) {
+        Integer id = ids.get(node);
+        return id == null ? -1 : id;
+    }
+
+    public TreeNode<T> node(int id) { return nodes[id]; }
+
+    // LCA of two nodes; null if either is not in the tree
+    public TreeNode<T> lca(TreeNode<T> a, TreeNode<T> b) {
+        int u = id(a);
+        int v = id(b);
+        return u < 0 || v < 0 ? null : nodes[lca(u, v)];
+    }
+
+    // LCA by ids, in O(1)
+    public int lca(int u, int v) {
+        if (u == v) { return u; }
+        int lo = Math.min(u, v);
+        int hi = Math.max(u, v);
+        // minimum of the parents at positions lo+1 .. hi, i.e. of entries
+        // lo .. hi-1 of level 0, from two overlapping power-of-2 ranges
+        int k = 31 - Integer.numberOfLeadingZeros(hi - lo);
+        return Math.min(minParent[k][lo], minParent[k][hi - (1 << k)]);
+    }
+
+    /**
+     * Tarjan's offline LCA for a batch of queries by id: one post-order
+     * walk of the tree, merging each finished subtree into its parent in
+     * a union-find structure. When a node is finished, a query whose
+     * other node is finished already is answered by the top of that
+     * node's set. The sparse table is not used.
+     * @return result[i] is the id of the LCA of a[i] and b[i]
+     */
+    public int[] lca(int[] a, int[] b) {
+        int n = nodes.length;
+        int q = a.length;
+
+        // queries by node, in compressed sparse row form
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < q; ++i) {
+            offsets[a[i] + 1]++;
+            offsets[b[i] + 1]++;
+        }
+        for (int v = 0; v < n; ++v) { offsets[v + 1] += offsets[v]; }
+        int[] queryOf = new int[2 * q];
+        int[] fill = Arrays.copyOf(offsets, n);
+        for (int i = 0; i < q; ++i) {
+            queryOf[fill[a[i]]++] = i;
+            queryOf[fill[b[i]]++] = i;
+        }
+
+        // union-find; top[find(v)] is the shallowest node of v's set
+        int[] set = new int[n];
+        int[] top = new int[n];
+        for (int v = 0; v < n; ++v) {
+            set[v] = v;
+            top[v] = v;
+        }
+        boolean[] finished = new boolean[n];
+        int[] result = new int[q];
+
+        // post-order walk with an explicit stack of ids
+        int[] stack = new int[Math.max(n, 1)];
+        byte[] childrenDone = new byte[Math.max(n, 1)];
+        int depth = 0;
+        if (n > 0) { stack[depth++] = 0; }
+        while (depth > 0) {
+            int u = stack[depth - 1];
+            int child = -1;
+            if (childrenDone[depth - 1] == 0) {
+                child = left[u];
+            } else if (childrenDone[depth - 1] == 1) {
+                child = right[u];
+            }
+            if (childrenDone[depth - 1] < 2) {
+                ++childrenDone[depth - 1];
+                if (child >= 0) {
+                    stack[depth] = child;
+                    childrenDone[depth++] = 0;
+                }
+                continue;
+            }
+
+            // u is finished: answer its queries, then join its parent's set
+            finished[u] = true;
+            for (int j = offsets[u]; j < offsets[u + 1]; ++j) {
+                int i = queryOf[j];
+                int other = a[i] == u ? b[i] : a[i];
+                if (finished[other]) { result[i] = top[find(set, other)]; }
+            }
+            if (--depth > 0) {
+                int p = stack[depth - 1];
+                int root = find(set, p);
+                set[find(set, u)] = root;
+                top[root] = p;
+            }
+        }
+        return result;
+    }
+
+    // helper: representative of v's set, halving paths on the way
+    private static int find(int[] set, int v) {
+        while (set[v] != v) {
+            set[v] = set[set[v]];
+            v = set[v];
+        }
+        return v;
+    }
+
+/////////////////////////////////////////////////////////////////////
+
+    private static void benchmark(String name, Integer[][] families, int n, int queries) {
+        Integer[] values = new Integer[n];
+        for (int i = 0; i < n; ++i) { values[i] = i; }
+        TreeNode<Integer> root = TreeNode.buildTree(values, families).get(0);
+
+        long start = System.nanoTime();
+        LCAIndex<Integer> index = new LCAIndex<>(root);
+        System.out.println(name + ", " + n + " nodes: index built in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+
+        Random random = new Random(42);
+        int[] a = new int[queries];
+        int[] b = new int[queries];
+        for (int i = 0; i < queries; ++i) {
+            a[i] = random.nextInt(n);
+            b[i] = random.nextInt(n);
+        }
+
+        // the O(n) walk, on a few queries only
+        LCA<Integer> walk = new LCA<>();
+        int sample = 20;
+        int mismatches = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < sample; ++i) {
+            TreeNode<Integer> x = walk.lcaIterative(index.node(a[i]), index.node(b[i]), root).lca;
+            if (x != index.lca(index.node(a[i]), index.node(b[i]))) { ++mismatches; }
+        }
+        long walkTime = (System.nanoTime() - start) / sample;
+
+        int[] online = new int[queries];
+        start = System.nanoTime();
+        for (int i = 0; i < queries; ++i) { online[i] = index.lca(a[i], b[i]); }
+        long onlineTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int[] offline = index.lca(a, b);
+        long offlineTime = System.nanoTime() - start;
+        if (!Arrays.equals(online, offline)) { ++mismatches; }
+
+        System.out.println("  LCA.lcaIterative: " + walkTime / 1000 + "us per query"
+                + "; sparse table: " + queries + " queries in " + onlineTime / 1000000 + "ms"
+                + "; Tarjan offline: " + offlineTime / 1000000 + "ms"
+                + (mismatches == 0 ? "" : "; " + mismatches + " MISMATCHES"));
+    }
+
+    public static void main(String[] args) {
+        Integer[][] family = {{0,1,2},{1,3,4},{2,5,6},{4,7,8},{6,9,null}};
+        Integer[] values = {0,1,2,3,4,5,6,7,8,9};
+        ArrayList<TreeNode<Integer>> nodes = TreeNode.buildTree(values, family);
+        LCAIndex<Integer> index = new LCAIndex<>(nodes.get(0));
+        System.out.println("LCA of " + nodes.get(7) + " and " + nodes.get(3) + " is "
+                + index.lca(nodes.get(7), nodes.get(3)));
+        System.out.println("LCA of " + nodes.get(8) + " and " + nodes.get(9) + " is "
+                + index.lca(nodes.get(8), nodes.get(9)));
+        int[] offline = index.lca(new int[] {index.id(nodes.get(7)), index.id(nodes.get(5))},
+                new int[] {index.id(nodes.get(8)), index.id(nodes.get(9))});
+        System.out.println("offline: LCA of " + nodes.get(7) + " and " + nodes.get(8) + " is "
+                + index.node(offline[0]) + ", of " + nodes.get(5) + " and " + nodes.get(9)
+                + " is " + index.node(offline[1]));
+
+        // pass the node count as first argument
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int queries = 1000000;
+        for (int round = 0; round < 2; ++round) {
+            benchmark("balanced", RandomGraphs.completeBinaryTree(n), n, queries);
+            benchmark("path", RandomGraphs.pathTree(n), n, queries);
+        }
+    }
+}
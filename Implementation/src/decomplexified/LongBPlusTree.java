@@ -0,0 +1,407 @@
+package decomplexified;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * @author Alan
+ *  Ordered set of primitive longs. Same algorithm as BPlusTree, but keys
+ *  live in the nodes' long[] arrays: no boxed key per entry, and a binary
+ *  search in a node compares longs in one array instead of following a
+ *  reference per probe.
+ */
+public class LongBPlusTree {
+    // keys[0..count) are in use; one spare slot for overflow before a split
+    private static class Node {
+        int count;
+        long[] keys;
+
+        Node(int capacity) { keys = new long[capacity + 1]; }
+    }
+
+    private static class Leaf extends Node {
+        Leaf next;
+
+        Leaf(int capacity) { super(capacity); }
+    }
+
+    // count keys, count+1 children
+    private static class Inner extends Node {
+        Node[] children;
+
+        Inner(int capacity) {
+            super(capacity);
+            children = new Node[capacity + 2];
+        }
+    }
+
+    private final int capacity;
+    private Node root;
+    private int size = 0;
+
+    public LongBPlusTree() { this(64); }
+    // capacity: keys per node, at least 3
+    public LongBPlusTree(int capacity) {
+        if (capacity < 3) { throw new IllegalArgumentException("capacity < 3"); }
+        this.capacity = capacity;
+        root = new Leaf(capacity);
+    }
+
+    // trivial methods
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public void clear() {
+        root = new Leaf(capacity);
+        size = 0;
+    }
+    // number of levels; 1 for a single leaf
+    public int height() {
+        int height = 1;
+        for (Node node = root; node instanceof Inner; node = ((Inner) node).children[0]) {
+            ++height;
+        }
+        return height;
+    }
+
+    public boolean contains(long query) {
+        Leaf leaf = findLeaf(query);
+        int i = lowerBound(leaf, query);
+        return i < leaf.count && leaf.keys[i] == query;
+    }
+
+    /* insert a value. Return false if it was present already */
+    public boolean insert(long value) {
+        Node sibling = insert(root, value);
+        if (sibling == INSERTED) { return false; }
+        ++size;
+        if (sibling != null) {
+            // the root was split: grow a level
+            Inner newRoot = new Inner(capacity);
+            newRoot.keys[0] = separator;
+            newRoot.children[0] = root;
+            newRoot.children[1] = sibling;
+            newRoot.count = 1;
+            root = newRoot;
+        }
+        return true;
+    }
+
+    /* delete a value. Return false if it was not found */
+    public boolean delete(long value) {
+        if (!delete(root, value)) { return false; }
+        --size;
+        if (root instanceof Inner && root.count == 0) {
+            // the root lost its last separator: shrink a level
+            root = ((Inner) root).children[0];
+        }
+        return true;
+    }
+
+    // marks an insert that found the value already present
+    private static final Node INSERTED = new Node(0);
+    // separator between a split node and its new right sibling
+    private long separator;
+
+    // helper: insert below node. Return the new right sibling if node
+    // was split (with separator set), INSERTED if value was present, or
+    // null.
+    private Node insert(Node node, long value) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int i = lowerBound(leaf, value);
+            if (i < leaf.count && leaf.keys[i] == value) { return INSERTED; }
+            System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.count - i);
+            leaf.keys[i] = value;
+            return ++leaf.count > capacity ? splitLeaf(leaf) : null;
+        }
+
+        Inner inner = (Inner) node;
+        int i = upperBound(inner, value);
+        Node sibling = insert(inner.children[i], value);
+        if (sibling == null || sibling == INSERTED) { return sibling; }
+        // a child was split: add its sibling right after it
+        System.arraycopy(inner.keys, i, inner.keys, i + 1, inner.count - i);
+        System.arraycopy(inner.children, i + 1, inner.children, i + 2, inner.count - i);
+        inner.keys[i] = separator;
+        inner.children[i + 1] = sibling;
+        return ++inner.count > capacity ? splitInner(inner) : null;
+    }
+
+    // helper: move the upper half of an overfull leaf to a new leaf
+    private Leaf splitLeaf(Leaf leaf) {
+        Leaf right = new Leaf(capacity);
+        int half = leaf.count / 2;
+        right.count = leaf.count - half;
+        System.arraycopy(leaf.keys, half, right.keys, 0, right.count);
+        leaf.count = half;
+        right.next = leaf.next;
+        leaf.next = right;
+        separator = right.keys[0];
+        return right;
+    }
+
+    // helper: same for an inner node; the middle key moves up
+    private Inner splitInner(Inner inner) {
+        Inner right = new Inner(capacity);
+        int half = inner.count / 2;
+        right.count = inner.count - half - 1;
+        System.arraycopy(inner.keys, half + 1, right.keys, 0, right.count);
+        System.arraycopy(inner.children, half + 1, right.children, 0, right.count + 1);
+        separator = inner.keys[half];
+        Arrays.fill(inner.children, half + 1, inner.count + 1, null);
+        inner.count = half;
+        return right;
+    }
+
+    // helper: delete below node; return false if value was not found.
+    // A child left less than half full is fixed by its parent.
+    private boolean delete(Node node, long value) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int i = lowerBound(leaf, value);
+            if (i == leaf.count || leaf.keys[i] != value) { return false; }
+            System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.count - i - 1);
+            --leaf.count;
+            return true;
+        }
+
+        Inner inner = (Inner) node;
+        int i = upperBound(inner, value);
+        if (!delete(inner.children[i], value)) { return false; }
+        if (inner.children[i].count < capacity / 2) { fixChild(inner, i); }
+        return true;
+    }
+
+    // helper: refill children[i] from a sibling, or merge it with one
+    private void fixChild(Inner parent, int i) {
+        // work on the pair (children[s], children[s+1]) around keys[s]
+        int s = i > 0 ? i - 1 : i;
+        Node left = parent.children[s];
+        Node right = parent.children[s + 1];
+        Node sibling = s == i ? right : left;
+        if (sibling.count > capacity / 2) {
+            if (sibling == left) {
+                borrowFromLeft(parent, s, left, right);
+            } else {
+                borrowFromRight(parent, s, left, right);
+            }
+            return;
+        }
+
+        // both at most half full: merge right into left
+        if (left instanceof Leaf) {
+            System.arraycopy(right.keys, 0, left.keys, left.count, right.count);
+            left.count += right.count;
+            ((Leaf) left).next = ((Leaf) right).next;
+        } else {
+            left.keys[left.count] = parent.keys[s];
+            System.arraycopy(right.keys, 0, left.keys, left.count + 1, right.count);
+            System.arraycopy(((Inner) right).children, 0,
+                    ((Inner) left).children, left.count + 1, right.count + 1);
+            left.count += right.count + 1;
+        }
+        System.arraycopy(parent.keys, s + 1, parent.keys, s, parent.count - s - 1);
+        System.arraycopy(parent.children, s + 2, parent.children, s + 1, parent.count - s - 1);
+        parent.children[parent.count] = null;
+        --parent.count;
+    }
+
+    // helper: move the last key (and child) of left to the front of right
+    private void borrowFromLeft(Inner parent, int s, Node left, Node right) {
+        System.arraycopy(right.keys, 0, right.keys, 1, right.count);
+        if (right instanceof Leaf) {
+            right.keys[0] = left.keys[left.count - 1];
+            parent.keys[s] = right.keys[0];
+        } else {
+            Node[] children = ((Inner) right).children;
+            System.arraycopy(children, 0, children, 1, right.count + 1);
+            children[0] = ((Inner) left).children[left.count];
+            ((Inner) left).children[left.count] = null;
+            right.keys[0] = parent.keys[s];
+            parent.keys[s] = left.keys[left.count - 1];
+        }
+        --left.count;
+        ++right.count;
+    }
+
+    // helper: move the first key (and child) of right to the end of left
+    private void borrowFromRight(Inner parent, int s, Node left, Node right) {
+        if (left instanceof Leaf) {
+            left.keys[left.count] = right.keys[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.count - 1);
+            parent.keys[s] = right.keys[0];
+        } else {
+            Node[] children = ((Inner) right).children;
+            left.keys[left.count] = parent.keys[s];
+            ((Inner) left).children[left.count + 1] = children[0];
+            parent.keys[s] = right.keys[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.count - 1);
+            System.arraycopy(children, 1, children, 0, right.count);
+            children[right.count] = null;
+        }
+        --right.count;
+        ++left.count;
+    }
+
+    /**
+     * Build a tree from sorted[from..to), which must be strictly
+     * increasing, in O(n), with full leaves.
+     */
+    public static LongBPlusTree bulkLoad(long[] sorted, int from, int to, int capacity) {
+        LongBPlusTree tree = new LongBPlusTree(capacity);
+        int n = to - from;
+        if (n <= 0) { return tree; }
+        for (int i = from + 1; i < to; ++i) {
+            if (sorted[i - 1] >= sorted[i]) {
+                throw new IllegalArgumentException("not strictly increasing at " + i);
+            }
+        }
+
+        // the leaves
+        int[] sizes = BPlusTree.groupSizes(n, capacity, capacity / 2);
+        Node[] level = new Node[sizes.length];
+        long[] lowest = new long[sizes.length];
+        int start = from;
+        for (int k = 0; k < sizes.length; ++k) {
+            Leaf leaf = new Leaf(capacity);
+            System.arraycopy(sorted, start, leaf.keys, 0, sizes[k]);
+            leaf.count = sizes[k];
+            if (k > 0) { ((Leaf) level[k - 1]).next = leaf; }
+            level[k] = leaf;
+            lowest[k] = sorted[start];
+            start += sizes[k];
+        }
+
+        // inner levels: each node takes up to capacity+1 children, with the
+        // lowest key below each child but the first as separator
+        while (level.length > 1) {
+            sizes = BPlusTree.groupSizes(level.length, capacity + 1, capacity / 2 + 1);
+            Node[] upper = new Node[sizes.length];
+            long[] upperLowest = new long[sizes.length];
+            start = 0;
+            for (int k = 0; k < sizes.length; ++k) {
+                Inner inner = new Inner(capacity);
+                System.arraycopy(level, start, inner.children, 0, sizes[k]);
+                System.arraycopy(lowest, start + 1, inner.keys, 0, sizes[k] - 1);
+                inner.count = sizes[k] - 1;
+                upper[k] = inner;
+                upperLowest[k] = lowest[start];
+                start += sizes[k];
+            }
+            level = upper;
+            lowest = upperLowest;
+        }
+        tree.root = level[0];
+        tree.size = n;
+        return tree;
+    }
+
+    /**
+     * Cursor over the values in [lo, hi) in increasing order. It reads the
+     * leaves in place, so the tree must not be modified while a cursor is
+     * in use.
+     */
+    public Cursor cursor(long lo, long hi) { return new Cursor(lo, hi, false); }
+
+    /**
+     * Cursor over the values >= lo, with no upper bound, like a null hi in
+     * BPlusTree.cursor; cursorFrom(Long.MIN_VALUE) covers the whole tree,
+     * Long.MAX_VALUE included.
+     */
+    public Cursor cursorFrom(long lo) { return new Cursor(lo, 0, true); }
+
+    public class Cursor implements PrimitiveIterator.OfLong {
+        private Leaf leaf;
+        private int i;
+        private final long hi;
+        // no upper bound; hi is ignored
+        private final boolean open;
+
+        private Cursor(long lo, long hi, boolean open) {
+            this.hi = hi;
+            this.open = open;
+            leaf = findLeaf(lo);
+            i = lowerBound(leaf, lo);
+            skipToKey();
+        }
+
+        public boolean hasNext() {
+            return leaf != null && (open || leaf.keys[i] < hi);
+        }
+
+        public long nextLong() {
+            if (!hasNext()) { throw new NoSuchElementException(); }
+            long value = leaf.keys[i++];
+            skipToKey();
+            return value;
+        }
+
+        // helper: move on to the next leaf at the end of this one
+        private void skipToKey() {
+            while (leaf != null && i == leaf.count) {
+                leaf = leaf.next;
+                i = 0;
+            }
+        }
+    }
+
+    // helper: the leaf where query is or would be
+    private Leaf findLeaf(long query) {
+        Node node = root;
+        while (node instanceof Inner) {
+            node = ((Inner) node).children[upperBound(node, query)];
+        }
+        return (Leaf) node;
+    }
+
+    // helper: first index whose key is >= value
+    private static int lowerBound(Node node, long value) {
+        long[] keys = node.keys;
+        int lo = 0;
+        int hi = node.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < value) { lo = mid + 1; } else { hi = mid; }
+        }
+        return lo;
+    }
+
+    // helper: first index whose key is > value, i.e. the child to follow
+    private static int upperBound(Node node, long value) {
+        long[] keys = node.keys;
+        int lo = 0;
+        int hi = node.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] <= value) { lo = mid + 1; } else { hi = mid; }
+        }
+        return lo;
+    }
+
+///////////////////////////////////////////////////////////////
+
+    // see BPlusTree.main for the benchmark against BST and TreeMap
+    public static void main(String[] args) {
+        LongBPlusTree tree = new LongBPlusTree(4);
+        for (long value = 1; value <= 30; ++value) { tree.insert(value); }
+        System.out.println("After inserting 1 .. 30: size " + tree.size()
+                + ", height " + tree.height());
+        System.out.println("insert 7 again --> " + tree.insert(7));
+        System.out.println("contains 7 --> " + tree.contains(7)
+                + ", contains 31 --> " + tree.contains(31));
+        for (long value = 1; value <= 30; value += 2) { tree.delete(value); }
+        System.out.println("After deleting the odd values: size " + tree.size()
+                + ", height " + tree.height());
+        System.out.print("[10, 20) -->");
+        Cursor cursor = tree.cursor(10, 20);
+        while (cursor.hasNext()) { System.out.print(" " + cursor.nextLong()); }
+        System.out.println();
+
+        tree.insert(Long.MAX_VALUE);
+        System.out.print("[24, ...) -->");
+        cursor = tree.cursorFrom(24);
+        while (cursor.hasNext()) { System.out.print(" " + cursor.nextLong()); }
+        System.out.println();
+    }
+}
@@ -0,0 +1,29 @@
+package decomplexified;
+
+import decomplexified.util.WeightedValue;
+
+/**
+ * @author Alan
+ *  Operations Dijkstra needs from its frontier: values keyed by a priority
+ *  that can be lowered, smallest priority first. Implemented by
+ *  BinaryPriorityQueue, PairingHeap and RadixHeap.
+ */
+public interface MinPriorityQueue<T, W extends Comparable<W>> {
+    /**
+     * Insert a value by an associated priority,
+     * or update its priority if it exists already
+     * @return whether the value existed before
+     */
+    public boolean push(T value, W priority);
+    
+    // remove the value with the smallest priority; null if empty
+    public WeightedValue<T,W> pop();
+    
+    // priority of a value; null if it is not in the queue
+    public W getPriority(T value);
+    
+    public boolean contains(T value);
+    public int size();
+    public boolean isEmpty();
+    public void clear();
+}
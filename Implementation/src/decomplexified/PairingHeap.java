@@ -0,0 +1,170 @@
+package decomplexified;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import decomplexified.util.WeightedValue;
+
+/**
+ * @author Alan
+ *  Pairing heap: a multiway tree where lowering a priority only cuts the
+ *  node off and melds it with the root, which costs O(1) instead of the
+ *  O(log n) sift of BinaryPriorityQueue. pop is O(log n) amortized.
+ */
+public class PairingHeap<T, W extends Comparable<W>>
+        implements MinPriorityQueue<T,W> {
+    // a node links to its first child and its next sibling. prev is the
+    // previous sibling, or the parent for a first child.
+    private static class Node<T, W> {
+        T value;
+        W priority;
+        Node<T,W> child;
+        Node<T,W> sibling;
+        Node<T,W> prev;
+
+        Node(T v, W w) { value = v; priority = w; }
+    }
+
+    private Node<T,W> root = null;
+    private HashMap<T, Node<T,W>> valueNode = new HashMap<>();
+
+    // scratch list reused by mergePairs
+    private ArrayList<Node<T,W>> pairs = new ArrayList<>();
+
+    // trivial methods
+    public int size() { return valueNode.size(); }
+    public boolean isEmpty() { return root == null; }
+    public void clear() {
+        root = null;
+        valueNode.clear();
+    }
+    public boolean contains(T value) {
+        return valueNode.containsKey(value);
+    }
+    public W getPriority(T value) {
+        Node<T,W> node = valueNode.get(value);
+        return node == null ? null : node.priority;
+    }
+
+    public boolean push(T value, W priority) {
+        Node<T,W> node = valueNode.get(value);
+        if (node == null) {
+            node = new Node<>(value, priority);
+            valueNode.put(value, node);
+            root = meld(root, node);
+            return false;
+        }
+
+        int compared = priority.compareTo(node.priority);
+        node.priority = priority;
+        if (compared < 0) {
+            // lowered: cut the subtree off and meld it with the root
+            if (node != root) {
+                cut(node);
+                root = meld(root, node);
+            }
+        } else if (compared > 0) {
+            // raised: children may now be smaller, so merge them
+            // into the heap and put the node back alone
+            Node<T,W> children = mergePairs(node.child);
+            node.child = null;
+            if (node == root) {
+                root = meld(children, node);
+            } else {
+                cut(node);
+                root = meld(meld(root, children), node);
+            }
+        }
+        return true;
+    }
+
+    public WeightedValue<T,W> pop() {
+        if (root == null) { return null; }
+        Node<T,W> top = root;
+        valueNode.remove(top.value);
+        root = mergePairs(top.child);
+        return new WeightedValue<>(top.value, top.priority);
+    }
+
+    /**
+     * helper: make the smaller of two roots the parent of the other.
+     * Both arguments must be roots without siblings.
+     */
+    private Node<T,W> meld(Node<T,W> a, Node<T,W> b) {
+        if (a == null) { return b; }
+        if (b == null) { return a; }
+        if (b.priority.compareTo(a.priority) < 0) {
+            Node<T,W> t = a; a = b; b = t;
+        }
+        // b becomes the first child of a
+        b.sibling = a.child;
+        if (a.child != null) { a.child.prev = b; }
+        b.prev = a;
+        a.child = b;
+        a.sibling = null;
+        a.prev = null;
+        return a;
+    }
+
+    // helper: detach a non-root node, with its subtree, from its parent
+    private void cut(Node<T,W> node) {
+        if (node.prev.child == node) {
+            node.prev.child = node.sibling;
+        } else {
+            node.prev.sibling = node.sibling;
+        }
+        if (node.sibling != null) { node.sibling.prev = node.prev; }
+        node.sibling = null;
+        node.prev = null;
+    }
+
+    /**
+     * helper: the standard two-pass merge of a list of siblings: meld
+     * them in pairs left to right, then meld the pairs right to left.
+     * Done without recursion so long sibling lists are safe.
+     */
+    private Node<T,W> mergePairs(Node<T,W> first) {
+        if (first == null) { return null; }
+        pairs.clear();
+        Node<T,W> a = first;
+        while (a != null) {
+            Node<T,W> b = a.sibling;
+            Node<T,W> next = b == null ? null : b.sibling;
+            a.sibling = null;
+            a.prev = null;
+            if (b != null) {
+                b.sibling = null;
+                b.prev = null;
+            }
+            pairs.add(meld(a, b));
+            a = next;
+        }
+        Node<T,W> result = pairs.get(pairs.size() - 1);
+        for (int i = pairs.size() - 2; i >= 0; --i) {
+            result = meld(pairs.get(i), result);
+        }
+        pairs.clear();
+        return result;
+    }
+
+/////////////////////////////////////////////////////////////////////
+
+    public static void main(String[] args) {
+        PairingHeap<String, Integer> pQueue = new PairingHeap<>();
+        String[] values = {"1","5","3","7a","7b","4","6","8a","8b","8c"};
+        Integer[] priorities = {1, 5, 3, 7, 7, 4, 6, 8, 8, 8};
+        for (int i = 0; i < values.length; ++i) {
+            pQueue.push(values[i], priorities[i]);
+        }
+        pQueue.push("8c", 2);
+        System.out.println("reset 8c with priority 2");
+        pQueue.push("1", 9);
+        System.out.println("reset 1 with priority 9");
+
+        StringBuffer popped = new StringBuffer();
+        while (!pQueue.isEmpty()) {
+            popped.append(pQueue.pop() + " ");
+        }
+        System.out.println("popped in order:");
+        System.out.println(popped);
+    }
+}
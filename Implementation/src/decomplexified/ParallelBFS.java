@@ -0,0 +1,351 @@
+package decomplexified;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import decomplexified.util.CSRGraph;
+import decomplexified.util.IntGraph;
+
+/**
+ * @author Alan
+ *  Level-synchronous BFS whose levels are expanded in parallel on a
+ *  ForkJoinPool, switching direction as the frontier grows and shrinks
+ *  (Beamer, Asanovic and Patterson, "Direction-optimizing breadth-first
+ *  search").
+ *
+ *  Top-down: every frontier vertex claims its unvisited children in a
+ *  shared visited bitmap with compare-and-set; the winner becomes the
+ *  parent. Cheap while the frontier is small.
+ *
+ *  Bottom-up: every unvisited vertex looks through its in-edges for a
+ *  parent in the frontier, and stops at the first one. Once the frontier
+ *  holds a large part of the graph most in-edges lead into it, so this
+ *  checks far fewer edges than top-down would.
+ *
+ *  To run a GraphNode graph, convert it with CSRGraph.buildGraph.
+ */
+public class ParallelBFS {
+    // switch to bottom-up when the frontier's edges exceed 1/ALPHA of
+    // the unexplored edges, and back when the frontier has fewer than
+    // 1/BETA of the vertices; the values from the paper
+    private static final int ALPHA = 14;
+    private static final int BETA = 24;
+
+    // below this many vertices a level runs on the calling thread
+    private static final int LEAF = 256;
+    // vertices per bottom-up task, a multiple of 64 so that no two tasks
+    // write the same bitmap word
+    private static final int BOTTOM_UP_LEAF = 4096;
+
+    private final ForkJoinPool pool;
+
+    // results of the last traversal
+    private int[] level;
+    private int[] parent;
+
+    public ParallelBFS(ForkJoinPool pool) { this.pool = pool; }
+
+    // hop distance of every vertex from the root, -1 if not reachable
+    public int[] getLevels() { return level; }
+    // parent of every vertex in the BFS tree, -1 for the root and for
+    // vertices not reachable
+    public int[] getParents() { return parent; }
+
+    /**
+     * Optional action for each level once it is complete: vertices[0..count)
+     * are the vertices at that hop distance, in no particular order. Runs
+     * on the calling thread. Does nothing unless overridden.
+     */
+    protected void process(int depth, int[] vertices, int count) {}
+
+    /**
+     * BFS from root.
+     * @param graph the graph
+     * @param reverse the graph with all edges reversed, used by the
+     *        bottom-up steps; the graph itself if undirected
+     * @return the hop distances, same as getLevels()
+     */
+    public int[] traverse(IntGraph graph, IntGraph reverse, int root) {
+        int n = graph.vertexCount();
+        level = new int[n];
+        parent = new int[n];
+        Arrays.fill(level, -1);
+        Arrays.fill(parent, -1);
+        AtomicLongArray visited = new AtomicLongArray((n + 63) / 64);
+        long[] frontierBits = null;
+
+        int[] frontier = {root};
+        int frontierSize = 1;
+        long frontierEdges = graph.degree(root);
+        long unexploredEdges = graph.edgeCount() - frontierEdges;
+        level[root] = 0;
+        visited.set(root >>> 6, 1L << root);
+        boolean bottomUp = false;
+
+        for (int depth = 0; frontierSize > 0; ++depth) {
+            process(depth, frontier, frontierSize);
+
+            if (!bottomUp && frontierEdges > unexploredEdges / ALPHA) {
+                bottomUp = true;
+            } else if (bottomUp && frontierSize < n / BETA) {
+                bottomUp = false;
+            }
+
+            Level next;
+            if (bottomUp) {
+                if (frontierBits == null) { frontierBits = new long[(n + 63) / 64]; }
+                Arrays.fill(frontierBits, 0);
+                for (int k = 0; k < frontierSize; ++k) {
+                    int v = frontier[k];
+                    frontierBits[v >>> 6] |= 1L << v;
+                }
+                BottomUp task = new BottomUp(graph, reverse, visited, frontierBits,
+                        depth + 1, 0, n);
+                next = n <= BOTTOM_UP_LEAF ? task.compute() : pool.invoke(task);
+            } else {
+                TopDown task = new TopDown(graph, visited, frontier,
+                        depth + 1, 0, frontierSize);
+                next = frontierSize <= LEAF ? task.compute() : pool.invoke(task);
+            }
+            frontier = next.vertices;
+            frontierSize = next.count;
+            frontierEdges = next.edges;
+            unexploredEdges -= next.edges;
+        }
+        return level;
+    }
+
+    /**
+     * Vertices found by a task: vertices[0..count), and the number of
+     * their out-edges.
+     */
+    private static class Level {
+        int[] vertices = new int[16];
+        int count = 0;
+        long edges = 0;
+
+        void add(int v, int degree) {
+            if (count == vertices.length) {
+                vertices = Arrays.copyOf(vertices, 2 * count);
+            }
+            vertices[count++] = v;
+            edges += degree;
+        }
+
+        Level merge(Level other) {
+            if (count + other.count > vertices.length) {
+                vertices = Arrays.copyOf(vertices, count + other.count);
+            }
+            System.arraycopy(other.vertices, 0, vertices, count, other.count);
+            count += other.count;
+            edges += other.edges;
+            return this;
+        }
+    }
+
+    // expand frontier[from..to)
+    private class TopDown extends RecursiveTask<Level> {
+        private static final long serialVersionUID = 1L;
+        final IntGraph graph;
+        final AtomicLongArray visited;
+        final int[] frontier;
+        final int depth, from, to;
+
+        TopDown(IntGraph graph, AtomicLongArray visited, int[] frontier,
+                int depth, int from, int to) {
+            this.graph = graph;
+            this.visited = visited;
+            this.frontier = frontier;
+            this.depth = depth;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected Level compute() {
+            if (to - from > LEAF) {
+                int mid = (from + to) >>> 1;
+                TopDown left = new TopDown(graph, visited, frontier, depth, from, mid);
+                left.fork();
+                Level right = new TopDown(graph, visited, frontier, depth, mid, to).compute();
+                return left.join().merge(right);
+            }
+            Level found = new Level();
+            for (int k = from; k < to; ++k) {
+                int u = frontier[k];
+                for (int e = graph.firstEdge(u); e < graph.endEdge(u); ++e) {
+                    int v = graph.target(e);
+                    if (claim(visited, v)) {
+                        level[v] = depth;
+                        parent[v] = u;
+                        found.add(v, graph.degree(v));
+                    }
+                }
+            }
+            return found;
+        }
+    }
+
+    // look for parents of the unvisited vertices in [from, to)
+    private class BottomUp extends RecursiveTask<Level> {
+        private static final long serialVersionUID = 1L;
+        final IntGraph graph, reverse;
+        final AtomicLongArray visited;
+        final long[] frontierBits;
+        final int depth, from, to;
+
+        BottomUp(IntGraph graph, IntGraph reverse, AtomicLongArray visited,
+                long[] frontierBits, int depth, int from, int to) {
+            this.graph = graph;
+            this.reverse = reverse;
+            this.visited = visited;
+            this.frontierBits = frontierBits;
+            this.depth = depth;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected Level compute() {
+            if (to - from > BOTTOM_UP_LEAF) {
+                int mid = from + (to - from) / 2 / 64 * 64;
+                BottomUp left = new BottomUp(graph, reverse, visited, frontierBits, depth, from, mid);
+                left.fork();
+                Level right = new BottomUp(graph, reverse, visited, frontierBits, depth, mid, to).compute();
+                return left.join().merge(right);
+            }
+            Level found = new Level();
+            for (int v = from; v < to; ++v) {
+                if ((visited.get(v >>> 6) & (1L << v)) != 0) { continue; }
+                for (int e = reverse.firstEdge(v); e < reverse.endEdge(v); ++e) {
+                    int u = reverse.target(e);
+                    if ((frontierBits[u >>> 6] & (1L << u)) != 0) {
+                        // this task owns v's bitmap word, but top-down
+                        // tasks of the same pool use atomic updates
+                        claim(visited, v);
+                        level[v] = depth;
+                        parent[v] = u;
+                        found.add(v, graph.degree(v));
+                        break;
+                    }
+                }
+            }
+            return found;
+        }
+    }
+
+    // helper: set v's visited bit; returns false if it was already set
+    private static boolean claim(AtomicLongArray visited, int v) {
+        int word = v >>> 6;
+        long bit = 1L << v;
+        while (true) {
+            long old = visited.get(word);
+            if ((old & bit) != 0) { return false; }
+            if (visited.compareAndSet(word, old, old | bit)) { return true; }
+        }
+    }
+
+/////////////////////////////////////////////////////////////////////
+
+    /**
+     * Check the levels against a plain sequential BFS and time both, with
+     * 1, 2, 4, ... threads up to the number of cores (or the second
+     * argument); pass the vertex count as first argument.
+     */
+    public static void main(String[] args) {
+        Integer[][] families = {{0,1,2},{1,0,3,4},{2,0,4,5,6},{3,1},{4,1,2,7,8},
+                               {5,2,7},{6,2,8,9},{7,4,5},{8,4,6},{9,6}};
+        CSRGraph small = CSRGraph.buildGraph(families.length, families);
+        ParallelBFS printer = new ParallelBFS(ForkJoinPool.commonPool()) {
+            protected void process(int depth, int[] vertices, int count) {
+                System.out.println("level " + depth + ": "
+                        + Arrays.toString(Arrays.copyOf(vertices, count)));
+            }
+        };
+        printer.traverse(small, small, 0);
+        System.out.println("parents: " + Arrays.toString(printer.getParents()));
+        System.out.println("-----------");
+
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        CSRGraph graph = randomGraph(n, 8, new Random(42));
+        System.out.println("skewed random graph: " + graph.vertexCount() + " vertices, "
+                + graph.edgeCount() + " edges");
+
+        long best = Long.MAX_VALUE;
+        int[] expected = null;
+        for (int round = 0; round < 3; ++round) {
+            long start = System.nanoTime();
+            expected = sequential(graph, 0);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println("  sequential: " + best / 1000000 + "ms");
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            ParallelBFS bfs = new ParallelBFS(pool);
+            best = Long.MAX_VALUE;
+            for (int round = 0; round < 3; ++round) {
+                long start = System.nanoTime();
+                bfs.traverse(graph, graph, 0);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            pool.shutdown();
+            System.out.println("  direction-optimizing, " + threads + " threads: "
+                    + best / 1000000 + "ms"
+                    + (isValid(graph, bfs, expected) ? "" : " MISMATCH"));
+        }
+    }
+
+    /**
+     * Undirected graph with about 2*degree*n edges, built straight into
+     * CSR form. One end of each edge is biased towards low ids, which
+     * gives a few hubs and a small diameter like a social graph.
+     */
+    private static CSRGraph randomGraph(int n, int degree, Random random) {
+        CSRGraph.Builder builder = new CSRGraph.Builder(n, 2 * degree * n);
+        for (long i = 0; i < (long) degree * n; ++i) {
+            int u = random.nextInt(n);
+            double r = random.nextDouble();
+            int v = (int) (r * r * r * n);
+            builder.addEdge(u, v);
+            builder.addEdge(v, u);
+        }
+        return builder.build();
+    }
+
+    // one-thread top-down BFS, as in BFSGraph.traverse(IntGraph, int)
+    private static int[] sequential(IntGraph graph, int root) {
+        int n = graph.vertexCount();
+        int[] dist = new int[n];
+        Arrays.fill(dist, -1);
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        dist[root] = 0;
+        queue[tail++] = root;
+        while (head < tail) {
+            int u = queue[head++];
+            for (int e = graph.firstEdge(u); e < graph.endEdge(u); ++e) {
+                int v = graph.target(e);
+                if (dist[v] < 0) {
+                    dist[v] = dist[u] + 1;
+                    queue[tail++] = v;
+                }
+            }
+        }
+        return dist;
+    }
+
+    // same levels, and every parent is one level up
+    private static boolean isValid(IntGraph graph, ParallelBFS bfs, int[] expected) {
+        if (!Arrays.equals(bfs.getLevels(), expected)) { return false; }
+        for (int v = 0; v < expected.length; ++v) {
+            int p = bfs.getParents()[v];
+            if (expected[v] > 0 && (p < 0 || expected[p] != expected[v] - 1)) { return false; }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,341 @@
+package decomplexified;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import decomplexified.util.TreeNode2;
+
+/**
+ * @author Alan
+ *  Persistent (immutable) ordered set: insert and delete never modify a
+ *  node, they return a new version of the set. Only the nodes on the
+ *  path from the root to the change are copied; every other subtree is
+ *  shared with the old version, which stays valid and unchanged.
+ *
+ *  So a snapshot is just a reference to a version: O(1), no copy, no
+ *  lock. Readers can walk a version for as long as they like while
+ *  writers keep producing new ones, e.g. through an AtomicReference
+ *  holding the current version (see main).
+ *
+ *  The tree is kept balanced the AVL way, as in AVLTree, so a path and
+ *  thus the cost of an update is O(log n) nodes; rotations build new
+ *  nodes too. Nodes also carry their subtree size, so size() is O(1).
+ */
+public final class PersistentBST<T extends Comparable<T>> implements Iterable<T> {
+    private static final class Node<T> {
+        final T value;
+        final Node<T> left;
+        final Node<T> right;
+        final int height;
+        final int size;
+
+        Node(T value, Node<T> left, Node<T> right) {
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            height = 1 + Math.max(height(left), height(right));
+            size = 1 + size(left) + size(right);
+        }
+    }
+
+    private static final PersistentBST<?> EMPTY = new PersistentBST<>(null);
+
+    private final Node<T> root;
+
+    private PersistentBST(Node<T> root) { this.root = root; }
+
+    @SuppressWarnings("unchecked")
+    public static <T extends Comparable<T>> PersistentBST<T> empty() {
+        return (PersistentBST<T>) EMPTY;
+    }
+
+    // trivial methods
+    public int size() { return size(root); }
+    public boolean isEmpty() { return root == null; }
+    // height of the tree; 0 if empty
+    public int height() { return height(root); }
+
+    /* find a value. Return the value stored in the tree that equals
+     * the query, null if not found.
+     */
+    public T find(T query) {
+        Node<T> node = root;
+        while (node != null) {
+            int compared = query.compareTo(node.value);
+            if (compared == 0) {
+                return node.value;
+            }
+            node = compared < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    public boolean contains(T query) { return find(query) != null; }
+
+    /* the set with value added; this one if value was present already */
+    public PersistentBST<T> insert(T value) {
+        Node<T> newRoot = insert(root, value);
+        return newRoot == root ? this : new PersistentBST<>(newRoot);
+    }
+
+    /* the set without value; this one if value was not found */
+    public PersistentBST<T> delete(T value) {
+        Node<T> newRoot = delete(root, value);
+        return newRoot == root ? this : new PersistentBST<>(newRoot);
+    }
+
+    // helper: the subtree with value added; node itself if unchanged
+    private static <T extends Comparable<T>> Node<T> insert(Node<T> node, T value) {
+        if (node == null) { return new Node<>(value, null, null); }
+        int compared = value.compareTo(node.value);
+        if (compared < 0) {
+            Node<T> left = insert(node.left, value);
+            return left == node.left ? node : balance(node.value, left, node.right);
+        } else if (compared > 0) {
+            Node<T> right = insert(node.right, value);
+            return right == node.right ? node : balance(node.value, node.left, right);
+        }
+        return node;
+    }
+
+    // helper: the subtree without value; node itself if unchanged
+    private static <T extends Comparable<T>> Node<T> delete(Node<T> node, T value) {
+        if (node == null) { return null; }
+        int compared = value.compareTo(node.value);
+        if (compared < 0) {
+            Node<T> left = delete(node.left, value);
+            return left == node.left ? node : balance(node.value, left, node.right);
+        } else if (compared > 0) {
+            Node<T> right = delete(node.right, value);
+            return right == node.right ? node : balance(node.value, node.left, right);
+        }
+        if (node.left == null) { return node.right; }
+        if (node.right == null) { return node.left; }
+        // two children: the successor takes the node's place
+        Node<T> successor = node.right;
+        while (successor.left != null) { successor = successor.left; }
+        return balance(successor.value, node.left, deleteMin(node.right));
+    }
+
+    // helper: the subtree without its smallest value
+    private static <T> Node<T> deleteMin(Node<T> node) {
+        if (node.left == null) { return node.right; }
+        return balance(node.value, deleteMin(node.left), node.right);
+    }
+
+    /**
+     * helper: a new node with value and the two subtrees, which are
+     * balanced and differ in height by at most two; rotated as in
+     * AVLTree.rebalance if they differ by two.
+     */
+    private static <T> Node<T> balance(T value, Node<T> left, Node<T> right) {
+        int balance = height(left) - height(right);
+        if (balance > 1) {
+            if (height(left.left) >= height(left.right)) {
+                // single right rotation
+                return new Node<>(left.value, left.left, new Node<>(value, left.right, right));
+            }
+            // left-right case
+            Node<T> middle = left.right;
+            return new Node<>(middle.value, new Node<>(left.value, left.left, middle.left),
+                    new Node<>(value, middle.right, right));
+        }
+        if (balance < -1) {
+            if (height(right.right) >= height(right.left)) {
+                // single left rotation
+                return new Node<>(right.value, new Node<>(value, left, right.left), right.right);
+            }
+            // right-left case
+            Node<T> middle = right.left;
+            return new Node<>(middle.value, new Node<>(value, left, middle.left),
+                    new Node<>(right.value, middle.right, right.right));
+        }
+        return new Node<>(value, left, right);
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Values in increasing order. A version never changes, so the
+     * iterator needs no care about concurrent writers.
+     */
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            // nodes whose value and right subtree are not done yet
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            private Node<T>[] stack = (Node<T>[]) new Node[Math.max(height(root), 1)];
+            private int top = 0;
+            {
+                pushLeft(root);
+            }
+
+            public boolean hasNext() { return top > 0; }
+
+            public T next() {
+                if (top == 0) { throw new NoSuchElementException(); }
+                Node<T> node = stack[--top];
+                pushLeft(node.right);
+                return node.value;
+            }
+
+            private void pushLeft(Node<T> node) {
+                for (; node != null; node = node.left) {
+                    if (top == stack.length) { stack = Arrays.copyOf(stack, 2 * top); }
+                    stack[top++] = node;
+                }
+            }
+        };
+    }
+
+    /**
+     * Structural sharing report: the number of distinct nodes making up
+     * all the given versions together. Without sharing it would be the
+     * sum of their sizes. A subtree already counted is not walked again.
+     */
+    @SafeVarargs
+    public static <T extends Comparable<T>> int distinctNodes(PersistentBST<T>... versions) {
+        Set<Node<T>> seen = Collections.newSetFromMap(new IdentityHashMap<Node<T>, Boolean>());
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Node<T>[] stack = (Node<T>[]) new Node[64];
+        for (PersistentBST<T> version : versions) {
+            int top = 0;
+            if (version.root != null) { stack[top++] = version.root; }
+            while (top > 0) {
+                Node<T> node = stack[--top];
+                if (!seen.add(node)) { continue; }
+                if (top + 2 > stack.length) { stack = Arrays.copyOf(stack, 2 * stack.length); }
+                if (node.left != null) { stack[top++] = node.left; }
+                if (node.right != null) { stack[top++] = node.right; }
+            }
+        }
+        return seen.size();
+    }
+
+/////////////////////////////////////////////////////////////////////
+
+    // deep copy of a TreeNode2 tree, the snapshot of a mutable BST
+    private static TreeNode2<Integer> copy(TreeNode2<Integer> node, TreeNode2<Integer> parent) {
+        if (node == null) { return null; }
+        TreeNode2<Integer> copy = new TreeNode2<>(node.value);
+        copy.parent = parent;
+        copy.left = copy(node.left, copy);
+        copy.right = copy(node.right, copy);
+        return copy;
+    }
+
+    /**
+     * n random values; a writer makes `updates` single inserts and takes
+     * a snapshot after each, by reference here and by deep copy of a BST
+     * (a tenth as many, they are slow). Then the memory kept by all the
+     * persistent snapshots.
+     */
+    private static void benchmark(int n, int updates) {
+        Random random = new Random(42);
+        int[] values = new int[n];
+        for (int i = 0; i < n; ++i) { values[i] = random.nextInt(); }
+
+        for (int round = 0; round < 2; ++round) {
+            long start = System.nanoTime();
+            AVLTree<Integer> mutable = new AVLTree<>();
+            for (int value : values) { mutable.insert(value); }
+            long mutableBuild = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            PersistentBST<Integer> set = PersistentBST.empty();
+            for (int value : values) { set = set.insert(value); }
+            long persistentBuild = System.nanoTime() - start;
+
+            BST<Integer> bst = new BST<>();
+            TreeNode2<Integer> bstRoot = null;
+            for (int value : values) { bstRoot = bst.insert(bstRoot, value); }
+
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            PersistentBST<Integer>[] snapshots = new PersistentBST[updates + 1];
+            snapshots[0] = set;
+            start = System.nanoTime();
+            for (int k = 1; k <= updates; ++k) {
+                set = set.insert(random.nextInt());
+                snapshots[k] = set;
+            }
+            long persistentSnapshots = System.nanoTime() - start;
+
+            int copies = Math.max(updates / 10, 1);
+            start = System.nanoTime();
+            for (int k = 1; k <= copies; ++k) {
+                bstRoot = bst.insert(bstRoot, random.nextInt());
+                copy(bstRoot, null);
+            }
+            long bstSnapshots = System.nanoTime() - start;
+
+            long logical = 0;
+            for (PersistentBST<Integer> snapshot : snapshots) { logical += snapshot.size(); }
+            int distinct = distinctNodes(snapshots);
+
+            System.out.println(n + " values: build AVLTree " + mutableBuild / 1000000
+                    + "ms, PersistentBST " + persistentBuild / 1000000 + "ms");
+            System.out.println("  insert + snapshot: PersistentBST "
+                    + persistentSnapshots / updates + "ns, BST + deep copy "
+                    + bstSnapshots / copies / 1000 + "us");
+            System.out.println("  " + snapshots.length + " snapshots hold " + logical
+                    + " values in " + distinct + " distinct nodes ("
+                    + (distinct - n) / Math.max(updates, 1) + " new nodes per update)");
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        PersistentBST<Integer> v1 = PersistentBST.empty();
+        for (int value = 1; value <= 15; ++value) { v1 = v1.insert(value); }
+        PersistentBST<Integer> v2 = v1.delete(8).insert(16);
+        System.out.println("v1: size " + v1.size() + ", height " + v1.height()
+                + ", contains 8 --> " + v1.contains(8) + ", contains 16 --> " + v1.contains(16));
+        System.out.println("v2: size " + v2.size() + ", height " + v2.height()
+                + ", contains 8 --> " + v2.contains(8) + ", contains 16 --> " + v2.contains(16));
+        System.out.println("v1 and v2 share nodes: " + (v1.size() + v2.size())
+                + " values in " + distinctNodes(v1, v2) + " nodes");
+        System.out.print("v2 -->");
+        for (int value : v2) { System.out.print(" " + value); }
+        System.out.println();
+
+        // a reader sums the current version while a writer replaces it;
+        // each sum is of one consistent version, whose size says what to
+        // expect
+        final int m = 100000;
+        final AtomicReference<PersistentBST<Integer>> current =
+                new AtomicReference<>(PersistentBST.<Integer>empty());
+        Thread writer = new Thread() {
+            public void run() {
+                for (int value = 1; value <= m; ++value) {
+                    current.set(current.get().insert(value));
+                }
+            }
+        };
+        writer.start();
+        int consistent = 0;
+        int reads = 0;
+        while (writer.isAlive() || reads == 0) {
+            PersistentBST<Integer> snapshot = current.get();
+            long sum = 0;
+            for (int value : snapshot) { sum += value; }
+            long size = snapshot.size();
+            if (sum == size * (size + 1) / 2) { ++consistent; }
+            ++reads;
+        }
+        writer.join();
+        System.out.println(consistent + " of " + reads + " snapshot reads were consistent");
+        System.out.println();
+
+        benchmark(args.length > 0 ? Integer.parseInt(args[0]) : 1000000, 1000);
+    }
+}
@@ -0,0 +1,150 @@
+package decomplexified;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import decomplexified.util.WeightedValue;
+
+/**
+ * @author Alan
+ *  Radix heap: a monotone priority queue, i.e. no value may be pushed with
+ *  a priority smaller than the last popped one. Dijkstra satisfies this.
+ *  Priorities must be non-negative and not NaN. Their IEEE bit patterns
+ *  then order the same way as the numbers, so the usual integer buckets
+ *  work: bucket b holds keys whose highest bit differing from the last
+ *  popped key is bit b-1. Each key only moves to lower buckets, so pop
+ *  is O(64) amortized and lowering a priority is O(1).
+ */
+public class RadixHeap<T> implements MinPriorityQueue<T, Double> {
+    private static class Entry<T> {
+        T value;
+        double priority;
+        long key;
+        int bucket;
+        int index; // position inside its bucket
+
+        Entry(T v) { value = v; }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private ArrayList<Entry<T>>[] buckets = new ArrayList[65];
+    private HashMap<T, Entry<T>> valueEntry = new HashMap<>();
+
+    // key of the last popped value; all keys in the heap are >= last
+    private long last = 0;
+
+    public RadixHeap() {
+        for (int b = 0; b < buckets.length; ++b) {
+            buckets[b] = new ArrayList<>();
+        }
+    }
+
+    // trivial methods
+    public int size() { return valueEntry.size(); }
+    public boolean isEmpty() { return valueEntry.isEmpty(); }
+    public void clear() {
+        for (ArrayList<Entry<T>> bucket : buckets) {
+            bucket.clear();
+        }
+        valueEntry.clear();
+        last = 0;
+    }
+    public boolean contains(T value) {
+        return valueEntry.containsKey(value);
+    }
+    public Double getPriority(T value) {
+        Entry<T> entry = valueEntry.get(value);
+        return entry == null ? null : entry.priority;
+    }
+
+    public boolean push(T value, Double priority) {
+        long key = Double.doubleToLongBits(priority + 0.0);
+        // NaN has a bit pattern above every number's, so check it too
+        if (priority.isNaN() || priority < 0 || key < last) {
+            throw new IllegalArgumentException("priority " + priority
+                    + " is NaN, negative or below the last popped one");
+        }
+        Entry<T> entry = valueEntry.get(value);
+        boolean existed = entry != null;
+        if (existed) {
+            removeFromBucket(entry);
+        } else {
+            entry = new Entry<>(value);
+            valueEntry.put(value, entry);
+        }
+        entry.priority = priority;
+        entry.key = key;
+        addToBucket(entry);
+        return existed;
+    }
+
+    public WeightedValue<T, Double> pop() {
+        if (valueEntry.isEmpty()) { return null; }
+
+        if (buckets[0].isEmpty()) {
+            // find the first non-empty bucket and its smallest key
+            int b = 1;
+            while (buckets[b].isEmpty()) { ++b; }
+            ArrayList<Entry<T>> bucket = buckets[b];
+            long min = Long.MAX_VALUE;
+            for (Entry<T> entry : bucket) {
+                min = Math.min(min, entry.key);
+            }
+
+            // move up to the smallest key; every entry of the bucket
+            // now lands in a lower bucket
+            last = min;
+            for (Entry<T> entry : bucket) {
+                addToBucket(entry);
+            }
+            bucket.clear();
+        }
+
+        // all entries of bucket 0 have key == last
+        ArrayList<Entry<T>> bucket = buckets[0];
+        Entry<T> top = bucket.remove(bucket.size() - 1);
+        valueEntry.remove(top.value);
+        return new WeightedValue<>(top.value, top.priority);
+    }
+
+    // helper: bucket for a key relative to the last popped key
+    private int bucketOf(long key) {
+        return key == last ? 0 : 64 - Long.numberOfLeadingZeros(key ^ last);
+    }
+
+    private void addToBucket(Entry<T> entry) {
+        entry.bucket = bucketOf(entry.key);
+        ArrayList<Entry<T>> bucket = buckets[entry.bucket];
+        entry.index = bucket.size();
+        bucket.add(entry);
+    }
+
+    // helper: O(1) removal by moving the bucket's last entry into the gap
+    private void removeFromBucket(Entry<T> entry) {
+        ArrayList<Entry<T>> bucket = buckets[entry.bucket];
+        Entry<T> moved = bucket.remove(bucket.size() - 1);
+        if (moved != entry) {
+            moved.index = entry.index;
+            bucket.set(entry.index, moved);
+        }
+    }
+
+/////////////////////////////////////////////////////////////////////
+
+    public static void main(String[] args) {
+        RadixHeap<String> pQueue = new RadixHeap<>();
+        String[] values = {"1","5","3","7a","7b","4","6","8a","8b","8c"};
+        double[] priorities = {1, 5, 3, 7, 7, 4, 6, 8, 8, 8};
+        for (int i = 0; i < values.length; ++i) {
+            pQueue.push(values[i], priorities[i]);
+        }
+        pQueue.push("8c", 2.0);
+        System.out.println("reset 8c with priority 2");
+
+        StringBuffer popped = new StringBuffer();
+        while (!pQueue.isEmpty()) {
+            popped.append(pQueue.pop() + " ");
+        }
+        System.out.println("popped in order:");
+        System.out.println(popped);
+    }
+}
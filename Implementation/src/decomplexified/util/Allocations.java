@@ -0,0 +1,19 @@
+package decomplexified.util;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * @author Alan
+ * Heap allocation counter for benchmarks, read from the JVM's per-thread
+ * allocation statistics (HotSpot and OpenJ9 keep them).
+ */
+public class Allocations {
+    // bytes allocated so far by the current thread; -1 if the JVM
+    // does not report it
+    public static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) { return -1; }
+        return ((com.sun.management.ThreadMXBean) bean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
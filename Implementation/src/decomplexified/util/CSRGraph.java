@@ -0,0 +1,157 @@
+package decomplexified.util;
+
+import java.util.Arrays;
+
+/**
+ * @author Alan
+ * Immutable directed graph in compressed sparse row form. Vertices are
+ * ints in [0, vertexCount). The out-edges of vertex v are the edge ids
+ * firstEdge(v) .. endEdge(v)-1, and edge e goes to target(e) with
+ * weight(e). Three flat arrays replace the node objects, neighbor lists
+ * and boxed weights of GraphNode and GraphNode2.
+ */
+public final class CSRGraph implements IntGraph {
+    // out-edges of v are [offsets[v], offsets[v+1])
+    private final int[] offsets;
+    private final int[] targets;
+    // null for an unweighted graph, where every weight is 1
+    private final double[] weights;
+
+    private CSRGraph(int[] offsets, int[] targets, double[] weights) {
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+    }
+
+    public int vertexCount() { return offsets.length - 1; }
+    public int edgeCount() { return offsets[offsets.length - 1]; }
+    public boolean isWeighted() { return weights != null; }
+
+    public int firstEdge(int v) { return offsets[v]; }
+    public int endEdge(int v) { return offsets[v + 1]; }
+    public int target(int e) { return targets[e]; }
+    public double weight(int e) { return weights == null ? 1.0 : weights[e]; }
+
+    /**
+     * Build an unweighted graph from the input of GraphNode.buildGraph.
+     * @param n number of vertices
+     * @param families families[i][1..] are the children of vertex families[i][0]
+     */
+    public static CSRGraph buildGraph(int n, Integer[][] families) {
+        Builder builder = new Builder(n);
+        for (Integer[] family : families) {
+            for (int i = 1; i < family.length; ++i) {
+                if (family[i] != null) {
+                    builder.addEdge(family[0], family[i]);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Build a weighted graph from the input of GraphNode2.buildGraph.
+     * @param n number of vertices
+     * @param edgeLists edgeLists[i][j] = {neighbor, weight} of vertex i
+     */
+    public static CSRGraph buildGraph(int n, Double[][][] edgeLists) {
+        Builder builder = new Builder(n);
+        for (int i = 0; i < n && i < edgeLists.length; ++i) {
+            for (Double[] edge : edgeLists[i]) {
+                builder.addEdge(i, (int) edge[0].doubleValue(), edge[1]);
+            }
+        }
+        return builder.build();
+    }
+
+    // the transposed graph: every edge u -> v becomes v -> u
+    public static CSRGraph reverse(IntGraph graph) {
+        Builder builder = new Builder(graph.vertexCount(), graph.edgeCount());
+        for (int u = 0; u < graph.vertexCount(); ++u) {
+            for (int e = graph.firstEdge(u); e < graph.endEdge(u); ++e) {
+                builder.addEdge(graph.target(e), u, graph.weight(e));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Collects edges in any order, e.g. from a stream, and sorts them by
+     * source vertex in O(n + m). Edges of the same source keep the order
+     * they were added in.
+     */
+    public static class Builder {
+        private final int n;
+        private int[] from;
+        private int[] to;
+        private double[] weight;
+        private int m = 0;
+        private boolean weighted = false;
+
+        public Builder(int vertexCount) { this(vertexCount, 16); }
+        // reserve room for the expected number of edges up front
+        public Builder(int vertexCount, int expectedEdges) {
+            n = vertexCount;
+            int capacity = Math.max(expectedEdges, 1);
+            from = new int[capacity];
+            to = new int[capacity];
+            weight = new double[capacity];
+        }
+
+        public Builder addEdge(int source, int target) {
+            return addEdge(source, target, 1.0);
+        }
+
+        public Builder addEdge(int source, int target, double w) {
+            if (source < 0 || source >= n || target < 0 || target >= n) {
+                throw new IndexOutOfBoundsException(source + " -> " + target);
+            }
+            if (m == from.length) {
+                from = Arrays.copyOf(from, 2 * m);
+                to = Arrays.copyOf(to, 2 * m);
+                weight = Arrays.copyOf(weight, 2 * m);
+            }
+            from[m] = source;
+            to[m] = target;
+            weight[m] = w;
+            weighted |= w != 1.0;
+            ++m;
+            return this;
+        }
+
+        // weights are dropped if every edge had weight 1
+        public CSRGraph build() {
+            // counting sort by source
+            int[] offsets = new int[n + 1];
+            for (int e = 0; e < m; ++e) { offsets[from[e] + 1]++; }
+            for (int v = 0; v < n; ++v) { offsets[v + 1] += offsets[v]; }
+
+            int[] next = Arrays.copyOf(offsets, n);
+            int[] targets = new int[m];
+            double[] weights = weighted ? new double[m] : null;
+            for (int e = 0; e < m; ++e) {
+                int slot = next[from[e]]++;
+                targets[slot] = to[e];
+                if (weighted) { weights[slot] = weight[e]; }
+            }
+            return new CSRGraph(offsets, targets, weights);
+        }
+    }
+
+/////////////////////////////////////////////////////////////////////
+    public static void main(String[] args) {
+        Double[][][] edgeLists = {
+                {{1.0,2.0},{2.0,1.0}},
+                {{0.0,2.0},{3.0,2.0},{4.0,1.0}},
+                {{0.0,1.0},{4.0,3.0},{5.0,4.0},{6.0,3.0}},
+                {{1.0,2.0}},
+                {{1.0,1.0},{2.0,3.0},{5.0,3.0},{7.0,3.0}},
+                {{2.0,4.0},{4.0,3.0}},
+                {{2.0,3.0}},
+                {{4.0,3.0}}};
+        CSRGraph graph = CSRGraph.buildGraph(8, edgeLists);
+        for (int v = 0; v < graph.vertexCount(); ++v) {
+            System.out.println(graph.familyToString(v));
+        }
+    }
+}
@@ -16,6 +16,9 @@ public class GraphNode2<T> {
     
     GraphNode2(T x) { value = x; }
     GraphNode2(T x, int id) { value = x; this.id = id; }
+    
+    // index given by buildGraph; null for nodes created without one
+    public Integer getId() { return id; }
 
     public String toString() {
         if (id == null) {
@@ -0,0 +1,35 @@
+package decomplexified.util;
+
+/**
+ * @author Alan
+ * Read-only directed graph on int vertex ids in [0, vertexCount), laid
+ * out in compressed sparse row form: the out-edges of vertex v are the
+ * edge ids firstEdge(v) .. endEdge(v)-1. Implemented on heap arrays by
+ * CSRGraph and on a memory-mapped file by MappedCSRGraph.
+ */
+public interface IntGraph {
+    public int vertexCount();
+    public int edgeCount();
+    public boolean isWeighted();
+
+    public int firstEdge(int v);
+    public int endEdge(int v);
+    public int target(int e);
+    // 1 for every edge of an unweighted graph
+    public double weight(int e);
+
+    public default int degree(int v) { return endEdge(v) - firstEdge(v); }
+
+    public default String familyToString(int v) {
+        StringBuffer output = new StringBuffer();
+        output.append("[" + v + "]");
+        if (degree(v) > 0) {
+            output.append(" ->");
+            for (int e = firstEdge(v); e < endEdge(v); ++e) {
+                output.append(" " + target(e));
+                if (isWeighted()) { output.append("{w=" + weight(e) + "}"); }
+            }
+        }
+        return output.toString();
+    }
+}
@@ -0,0 +1,219 @@
+package decomplexified.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * @author Alan
+ * Graph read straight from a binary CSR file mapped into memory: opening
+ * it parses only the header, and edges are read from the page cache
+ * on demand, so nothing is copied onto the heap.
+ *
+ * File layout, little-endian:
+ *   header   int magic "CSRG", int version, int vertexCount,
+ *            int edgeCount, int flags (bit 0: weighted), int padding
+ *   offsets  (vertexCount+1) ints, padded to a multiple of 8 bytes
+ *   targets  edgeCount ints, padded to a multiple of 8 bytes
+ *   weights  edgeCount doubles, only if weighted
+ * Each section is mapped on its own and must stay under 2GB, i.e. up to
+ * about 536M vertices and 268M weighted or 536M unweighted edges.
+ */
+public final class MappedCSRGraph implements IntGraph {
+    private static final int MAGIC = 0x43535247; // "CSRG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+
+    private final int vertexCount;
+    private final int edgeCount;
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+    // null for an unweighted graph
+    private final DoubleBuffer weights;
+
+    private MappedCSRGraph(int n, int m, IntBuffer o, IntBuffer t, DoubleBuffer w) {
+        vertexCount = n;
+        edgeCount = m;
+        offsets = o;
+        targets = t;
+        weights = w;
+    }
+
+    public int vertexCount() { return vertexCount; }
+    public int edgeCount() { return edgeCount; }
+    public boolean isWeighted() { return weights != null; }
+
+    public int firstEdge(int v) { return offsets.get(v); }
+    public int endEdge(int v) { return offsets.get(v + 1); }
+    public int target(int e) { return targets.get(e); }
+    public double weight(int e) { return weights == null ? 1.0 : weights.get(e); }
+
+    /**
+     * Map a graph file. The mapping stays valid after this returns and
+     * is released when the graph is garbage collected.
+     */
+    public static MappedCSRGraph open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("not a CSR graph file: " + file);
+            }
+            ByteBuffer header = map(channel, 0, HEADER_BYTES);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("not a CSR graph file: " + file);
+            }
+            int n = header.getInt(8);
+            int m = header.getInt(12);
+            boolean weighted = (header.getInt(16) & 1) != 0;
+            if (n < 0 || m < 0) {
+                throw new IOException("corrupt CSR graph header: " + file);
+            }
+            // section sizes in long, as n + 1 overflows for n = MAX_VALUE
+            long offsetsBytes = 4L * n + 4;
+            long targetsBytes = 4L * m;
+            long weightsBytes = weighted ? 8L * m : 0;
+            if (offsetsBytes > Integer.MAX_VALUE || targetsBytes > Integer.MAX_VALUE
+                    || weightsBytes > Integer.MAX_VALUE) {
+                throw new IOException("CSR graph too large to map: " + file);
+            }
+
+            long offsetsAt = HEADER_BYTES;
+            long targetsAt = offsetsAt + padded(offsetsBytes);
+            long weightsAt = targetsAt + padded(targetsBytes);
+            if (weightsAt + weightsBytes > channel.size()) {
+                throw new IOException("truncated CSR graph file: " + file);
+            }
+
+            IntBuffer offsets = map(channel, offsetsAt, offsetsBytes).asIntBuffer();
+            IntBuffer targets = map(channel, targetsAt, targetsBytes).asIntBuffer();
+            DoubleBuffer weights = weighted
+                    ? map(channel, weightsAt, weightsBytes).asDoubleBuffer() : null;
+            return new MappedCSRGraph(n, m, offsets, targets, weights);
+        }
+    }
+
+    // write any IntGraph in the format read by open
+    public static void write(IntGraph graph, Path file) throws IOException {
+        int n = graph.vertexCount();
+        int m = graph.edgeCount();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m)
+                  .putInt(graph.isWeighted() ? 1 : 0).putInt(0);
+
+            for (int v = 0; v < n; ++v) {
+                buffer = putInt(channel, buffer, graph.firstEdge(v));
+            }
+            buffer = putInt(channel, buffer, n == 0 ? 0 : graph.endEdge(n - 1));
+            if ((n + 1) % 2 != 0) { buffer = putInt(channel, buffer, 0); }
+
+            for (int e = 0; e < m; ++e) {
+                buffer = putInt(channel, buffer, graph.target(e));
+            }
+            if (m % 2 != 0) { buffer = putInt(channel, buffer, 0); }
+
+            if (graph.isWeighted()) {
+                for (int e = 0; e < m; ++e) {
+                    if (buffer.remaining() < 8) { flush(channel, buffer); }
+                    buffer.putDouble(graph.weight(e));
+                }
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size)
+                      .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long padded(long bytes) { return (bytes + 7) / 8 * 8; }
+
+    private static ByteBuffer putInt(FileChannel channel, ByteBuffer buffer, int x) throws IOException {
+        if (buffer.remaining() < 4) { flush(channel, buffer); }
+        return buffer.putInt(x);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) { channel.write(buffer); }
+        buffer.clear();
+    }
+
+/////////////////////////////////////////////////////////////////////
+
+    // resident set size of this process in kB; -1 where /proc is missing
+    private static long rssKb() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException e) {
+            // not on Linux
+        }
+        return -1;
+    }
+
+    private static long heapKb() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        return (runtime.totalMemory() - runtime.freeMemory()) / 1024;
+    }
+
+    /**
+     * Compare loading a grid graph with GraphNode2.buildGraph against
+     * opening it from a mapped file; pass the grid side as first argument.
+     */
+    public static void main(String[] args) throws IOException {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        Double[][][] edgeLists = RandomGraphs.grid(side, side, 100, new Random(42));
+        Integer[] values = new Integer[edgeLists.length];
+        for (int i = 0; i < values.length; ++i) { values[i] = i; }
+
+        Path file = Files.createTempFile("graph", ".csr");
+        CSRGraph graph = CSRGraph.buildGraph(values.length, edgeLists);
+        write(graph, file);
+        System.out.println(graph.vertexCount() + " vertices, " + graph.edgeCount()
+                + " edges, file " + Files.size(file) / 1024 + "kB");
+
+        long heap = heapKb();
+        long rss = rssKb();
+        long start = System.nanoTime();
+        ArrayList<GraphNode2<Integer>> nodes = GraphNode2.buildGraph(values, edgeLists);
+        long built = System.nanoTime() - start;
+        System.out.println("GraphNode2.buildGraph: " + built / 1000000 + "ms, heap +"
+                + (heapKb() - heap) + "kB, rss +" + (rssKb() - rss) + "kB");
+
+        heap = heapKb();
+        rss = rssKb();
+        start = System.nanoTime();
+        MappedCSRGraph mapped = open(file);
+        long opened = System.nanoTime() - start;
+        System.out.println("MappedCSRGraph.open: " + opened / 1000 + "us, heap +"
+                + (heapKb() - heap) + "kB, rss +" + (rssKb() - rss) + "kB");
+
+        // check the round trip
+        boolean same = mapped.vertexCount() == graph.vertexCount()
+                && mapped.edgeCount() == graph.edgeCount();
+        for (int v = 0; same && v < graph.vertexCount(); ++v) {
+            same = mapped.firstEdge(v) == graph.firstEdge(v) && mapped.endEdge(v) == graph.endEdge(v);
+        }
+        for (int e = 0; same && e < graph.edgeCount(); ++e) {
+            same = mapped.target(e) == graph.target(e) && mapped.weight(e) == graph.weight(e);
+        }
+        System.out.println("round trip " + (same ? "ok" : "MISMATCH") + ", "
+                + nodes.size() + " nodes built");
+        Files.delete(file);
+    }
+}
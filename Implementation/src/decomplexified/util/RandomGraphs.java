@@ -0,0 +1,142 @@
+package decomplexified.util;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * @author Alan
+ * Synthetic graphs for benchmarks. Weighted graphs are edge lists in the
+ * format taken by GraphNode2.buildGraph, with integer weights in
+ * [1, maxWeight]; unweighted ones are families as taken by
+ * GraphNode.buildGraph and TreeNode.buildTree.
+ */
+public class RandomGraphs {
+    /**
+     * Undirected rows x cols grid; node r*cols+c is linked to its
+     * horizontal and vertical neighbors.
+     */
+    public static Double[][][] grid(int rows, int cols, int maxWeight, Random random) {
+        ArrayList<ArrayList<Double[]>> edges = newEdgeLists(rows * cols);
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < cols; ++c) {
+                int id = r * cols + c;
+                if (c + 1 < cols) { link(edges, id, id + 1, maxWeight, random); }
+                if (r + 1 < rows) { link(edges, id, id + cols, maxWeight, random); }
+            }
+        }
+        return toArray(edges);
+    }
+
+    /**
+     * Undirected rows x cols grid with a hierarchy of roads, a rough
+     * model of a road network: every 8th row and column is an arterial
+     * road and every 64th a motorway, on average 4 and 16 times as fast
+     * as the streets in between. Weights are travel times: in
+     * [1, maxWeight] on a motorway, up to 4 and 16 times that on an
+     * arterial road and a street.
+     */
+    public static Double[][][] roadGrid(int rows, int cols, int maxWeight, Random random) {
+        ArrayList<ArrayList<Double[]>> edges = newEdgeLists(rows * cols);
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < cols; ++c) {
+                int id = r * cols + c;
+                // a horizontal edge runs along row r, a vertical one along column c
+                if (c + 1 < cols) { link(edges, id, id + 1, maxWeight * 16 / speed(r), random); }
+                if (r + 1 < rows) { link(edges, id, id + cols, maxWeight * 16 / speed(c), random); }
+            }
+        }
+        return toArray(edges);
+    }
+
+    // helper: relative speed of the road along a row or column
+    private static int speed(int line) {
+        return line % 64 == 0 ? 16 : line % 8 == 0 ? 4 : 1;
+    }
+
+    /**
+     * Undirected scale-free graph by preferential attachment
+     * (Barabasi-Albert): every new node links to m existing nodes,
+     * picked with probability proportional to their degrees.
+     */
+    public static Double[][][] scaleFree(int n, int m, int maxWeight, Random random) {
+        ArrayList<ArrayList<Double[]>> edges = newEdgeLists(n);
+        // every edge end is listed once, so a uniform pick from this
+        // list is a pick proportional to degree
+        int[] ends = new int[2 * m * n];
+        int endCount = 0;
+        for (int i = 1; i <= m && i < n; ++i) {
+            link(edges, i, i - 1, maxWeight, random);
+            ends[endCount++] = i;
+            ends[endCount++] = i - 1;
+        }
+        for (int i = m + 1; i < n; ++i) {
+            for (int k = 0; k < m; ++k) {
+                int j = ends[random.nextInt(endCount)];
+                link(edges, i, j, maxWeight, random);
+                ends[endCount++] = i;
+                ends[endCount++] = j;
+            }
+        }
+        return toArray(edges);
+    }
+
+    // unweighted version of grid(rows, cols, maxWeight, random)
+    public static Integer[][] grid(int rows, int cols) {
+        Integer[][] families = new Integer[rows * cols][];
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < cols; ++c) {
+                ArrayList<Integer> family = new ArrayList<>(5);
+                family.add(r * cols + c);
+                if (c > 0) { family.add(r * cols + c - 1); }
+                if (c + 1 < cols) { family.add(r * cols + c + 1); }
+                if (r > 0) { family.add((r - 1) * cols + c); }
+                if (r + 1 < rows) { family.add((r + 1) * cols + c); }
+                families[r * cols + c] = family.toArray(new Integer[0]);
+            }
+        }
+        return families;
+    }
+
+    // complete binary tree of n nodes: the children of i are 2i+1, 2i+2
+    public static Integer[][] completeBinaryTree(int n) {
+        Integer[][] families = new Integer[n / 2][];
+        for (int i = 0; i < n / 2; ++i) {
+            families[i] = new Integer[] {i, 2 * i + 1, 2 * i + 2 < n ? 2 * i + 2 : null};
+        }
+        return families;
+    }
+
+    // tree of n nodes that is a single path: the only child of i is
+    // its left child i+1
+    public static Integer[][] pathTree(int n) {
+        Integer[][] families = new Integer[Math.max(n - 1, 0)][];
+        for (int i = 0; i + 1 < n; ++i) {
+            families[i] = new Integer[] {i, i + 1, null};
+        }
+        return families;
+    }
+
+    private static ArrayList<ArrayList<Double[]>> newEdgeLists(int n) {
+        ArrayList<ArrayList<Double[]>> edges = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i) {
+            edges.add(new ArrayList<Double[]>());
+        }
+        return edges;
+    }
+
+    // add an edge in both directions with the same weight
+    private static void link(ArrayList<ArrayList<Double[]>> edges, int a, int b,
+            int maxWeight, Random random) {
+        double weight = 1 + random.nextInt(maxWeight);
+        edges.get(a).add(new Double[] {(double) b, weight});
+        edges.get(b).add(new Double[] {(double) a, weight});
+    }
+
+    private static Double[][][] toArray(ArrayList<ArrayList<Double[]>> edges) {
+        Double[][][] result = new Double[edges.size()][][];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = edges.get(i).toArray(new Double[0][]);
+        }
+        return result;
+    }
+}
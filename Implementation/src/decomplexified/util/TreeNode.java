@@ -58,6 +58,12 @@ public class TreeNode<T> {
         }
         return nodes;
     }
+
+    // a TreeNode<T>[] of the given length, which Java cannot create directly
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static <T> TreeNode<T>[] newArray(int length) {
+        return (TreeNode<T>[]) new TreeNode[length];
+    }
     
     /* pre-order DFS; for debugging purpose */
     public void print(boolean family) {